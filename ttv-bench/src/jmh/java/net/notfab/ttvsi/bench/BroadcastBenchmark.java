@@ -0,0 +1,101 @@
+package net.notfab.ttvsi.bench;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.notfab.ttvsi.common.Headers;
+import net.notfab.ttvsi.common.WireEncoding;
+import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
+import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
+import net.notfab.ttvsi.server.cluster.ClusterProperties;
+import net.notfab.ttvsi.server.cluster.InMemoryRoomBus;
+import net.notfab.ttvsi.server.cluster.RoomBus;
+import net.notfab.ttvsi.server.cluster.RoomOwnership;
+import net.notfab.ttvsi.server.services.RoomExecutor;
+import net.notfab.ttvsi.server.services.RoomProperties;
+import net.notfab.ttvsi.server.services.RoomRegistry;
+import net.notfab.ttvsi.server.store.MemoryRoomStateStore;
+import net.notfab.ttvsi.server.websocket.*;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.CloseStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link BufferedWebSocketHandler#broadcast(String, net.notfab.ttvsi.common.NetworkEvent)} to a room of fake
+ * sessions, split between JSON and CBOR clients. Measures the caller side: sequencing, encoding once per encoding
+ * and queueing on every member's writer. Writers drain into sessions that do no IO.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BroadcastBenchmark {
+
+    private static final String ROOM = "room";
+
+    @Param({"10", "100", "1000"})
+    public int sessions;
+
+    private final LongAdder delivered = new LongAdder();
+    private final List<FakeSession> connected = new ArrayList<>();
+    private RoomExecutor executor;
+    private BufferedWebSocketHandler handler;
+    private RewardRedeemEvent redeem;
+    private int votes;
+
+    @Setup
+    public void setup() {
+        WebsocketProperties properties = new WebsocketProperties();
+        properties.setQueueLimit(Integer.MAX_VALUE);
+        properties.setBufferSizeLimit(Integer.MAX_VALUE);
+        RoomProperties roomProperties = new RoomProperties();
+        roomProperties.setShards(1);
+        RoomBus bus = new InMemoryRoomBus();
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        this.executor = new RoomExecutor(roomProperties);
+        this.handler = new BufferedWebSocketHandler(
+                new RoomRegistry(new MemoryRoomStateStore()),
+                this.executor,
+                new NetEventDispatcher(),
+                event -> {
+                },
+                properties,
+                new CompressionStats(properties),
+                bus,
+                new RoomOwnership(bus, new ClusterProperties()),
+                new WebsocketMetrics(registry),
+                new TraceMetrics(registry));
+        for (int i = 0; i < this.sessions; i++) {
+            FakeSession session = new FakeSession("session-" + i, this.delivered);
+            session.getAttributes().put(Headers.X_CREDENTIALS, new WsCredentials(UUID.randomUUID(), "channel-" + i, ROOM));
+            session.getAttributes().put(Headers.X_ENCODING, i % 2 == 0 ? WireEncoding.JSON : WireEncoding.CBOR);
+            this.handler.afterConnectionEstablished(session);
+            this.connected.add(session);
+        }
+        this.redeem = SerializationBenchmark.redeem();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.connected.forEach(FakeSession::close);
+        this.connected.forEach(session -> this.handler.afterConnectionClosed(session, CloseStatus.NORMAL));
+        this.executor.shutdown();
+    }
+
+    @Benchmark
+    public void redeem() {
+        this.handler.broadcast(ROOM, this.redeem);
+    }
+
+    @Benchmark
+    public void pollUpdate() {
+        // A new tally every time, like a running poll
+        this.handler.broadcast(ROOM, new ServerPollUpdateEvent("poll", Map.of("a", this.votes++, "b", 10)));
+    }
+
+}
@@ -0,0 +1,150 @@
+package net.notfab.ttvsi.bench;
+
+import net.notfab.ttvsi.common.NetEvent;
+import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.polls.client.ClientPollProgressEvent;
+import net.notfab.ttvsi.server.websocket.NetEventDispatcher;
+import net.notfab.ttvsi.server.websocket.NetHandler;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.event.EventListener;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares delivering a client message through Spring's {@code @EventListener} fan-out, where every listener
+ * filters on the message type, with the type indexed {@link NetEventDispatcher}.
+ * Both sides register the seven message handlers the server has.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+
+    private AnnotationConfigApplicationContext listeners;
+    private AnnotationConfigApplicationContext dispatchers;
+    private NetEventDispatcher dispatcher;
+    private WsMessageEvent event;
+
+    @Setup
+    public void setup() {
+        this.listeners = new AnnotationConfigApplicationContext(FilteringListeners.class);
+        this.dispatchers = new AnnotationConfigApplicationContext(NetEventDispatcher.class, IndexedHandlers.class);
+        this.dispatcher = this.dispatchers.getBean(NetEventDispatcher.class);
+        WsCredentials credentials = new WsCredentials(UUID.randomUUID(), "channel", "room");
+        ClientPollProgressEvent payload = new ClientPollProgressEvent("poll", "channel", Map.of("a", 1, "b", 2));
+        this.event = new WsMessageEvent(credentials, payload.getType(), payload);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.listeners.close();
+        this.dispatchers.close();
+    }
+
+    @Benchmark
+    public void eventListener(Blackhole blackhole) {
+        this.listeners.publishEvent(this.event);
+        blackhole.consume(this.event);
+    }
+
+    @Benchmark
+    public void netEventDispatcher(Blackhole blackhole) {
+        this.dispatcher.dispatch(this.event);
+        blackhole.consume(this.event);
+    }
+
+    public static class FilteringListeners {
+
+        private int handled;
+
+        @EventListener
+        public void onPollCreated(WsMessageEvent event) {
+            this.handle(event, NetEvent.CLIENT_CREATE_POLL);
+        }
+
+        @EventListener
+        public void onPollProgress(WsMessageEvent event) {
+            this.handle(event, NetEvent.CLIENT_POLL_PROGRESS);
+        }
+
+        @EventListener
+        public void onPollFinished(WsMessageEvent event) {
+            this.handle(event, NetEvent.CLIENT_POLL_FINISHED);
+        }
+
+        @EventListener
+        public void onRedeem(WsMessageEvent event) {
+            this.handle(event, NetEvent.REWARD_REDEEMED);
+        }
+
+        @EventListener
+        public void onCreate(WsMessageEvent event) {
+            this.handle(event, NetEvent.CLIENT_CREATE_REWARD);
+        }
+
+        @EventListener
+        public void onDelete(WsMessageEvent event) {
+            this.handle(event, NetEvent.CLIENT_DELETE_REWARD);
+        }
+
+        @EventListener
+        public void onUpdate(WsMessageEvent event) {
+            this.handle(event, NetEvent.CLIENT_UPDATE_REWARDS);
+        }
+
+        private void handle(WsMessageEvent event, NetEvent type) {
+            if (!event.event().equals(type)) {
+                return;
+            }
+            this.handled++;
+        }
+
+    }
+
+    public static class IndexedHandlers {
+
+        private int handled;
+
+        @NetHandler(NetEvent.CLIENT_CREATE_POLL)
+        public void onPollCreated(WsMessageEvent event) {
+            this.handled++;
+        }
+
+        @NetHandler(NetEvent.CLIENT_POLL_PROGRESS)
+        public void onPollProgress(WsMessageEvent event) {
+            this.handled++;
+        }
+
+        @NetHandler(NetEvent.CLIENT_POLL_FINISHED)
+        public void onPollFinished(WsMessageEvent event) {
+            this.handled++;
+        }
+
+        @NetHandler(NetEvent.REWARD_REDEEMED)
+        public void onRedeem(WsMessageEvent event) {
+            this.handled++;
+        }
+
+        @NetHandler(NetEvent.CLIENT_CREATE_REWARD)
+        public void onCreate(WsMessageEvent event) {
+            this.handled++;
+        }
+
+        @NetHandler(NetEvent.CLIENT_DELETE_REWARD)
+        public void onDelete(WsMessageEvent event) {
+            this.handled++;
+        }
+
+        @NetHandler(NetEvent.CLIENT_UPDATE_REWARDS)
+        public void onUpdate(WsMessageEvent event) {
+            this.handled++;
+        }
+
+    }
+
+}
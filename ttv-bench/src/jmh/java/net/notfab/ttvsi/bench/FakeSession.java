@@ -0,0 +1,116 @@
+package net.notfab.ttvsi.bench;
+
+import jakarta.annotation.Nonnull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Session that accepts every message without doing any IO, counting what it was sent.
+ */
+public class FakeSession implements WebSocketSession {
+
+    private final String id;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final LongAdder messages;
+    private volatile boolean open = true;
+
+    public FakeSession(String id, LongAdder messages) {
+        this.id = id;
+        this.messages = messages;
+    }
+
+    @Override
+    public @Nonnull String getId() {
+        return this.id;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("ws://localhost/websocket");
+    }
+
+    @Override
+    public @Nonnull HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public @Nonnull Map<String, Object> getAttributes() {
+        return this.attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public @Nonnull List<WebSocketExtension> getExtensions() {
+        return List.of();
+    }
+
+    @Override
+    public void sendMessage(@Nonnull WebSocketMessage<?> message) {
+        this.messages.increment();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.open;
+    }
+
+    @Override
+    public void close() {
+        this.open = false;
+    }
+
+    @Override
+    public void close(@Nonnull CloseStatus status) {
+        this.open = false;
+    }
+
+}
@@ -0,0 +1,77 @@
+package net.notfab.ttvsi.bench;
+
+import net.notfab.ttvsi.common.polls.Choice;
+import net.notfab.ttvsi.common.polls.Poll;
+import net.notfab.ttvsi.server.models.PollState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a channel reporting its votes and of reading the room's tally, with every channel already reporting.
+ * Votes are generated from a fixed seed so runs are comparable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PollStateBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int channels;
+
+    @Param({"2", "5"})
+    public int choices;
+
+    private PollState state;
+    private String[] names;
+    private List<Map<String, Integer>> reports;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Poll poll = new Poll();
+        poll.setId("poll");
+        poll.setDuration(60);
+        List<Choice> choices = new ArrayList<>();
+        for (int i = 0; i < this.choices; i++) {
+            Choice choice = new Choice();
+            choice.setId("choice-" + i);
+            choice.setTitle("Choice " + i);
+            choices.add(choice);
+        }
+        poll.setChoices(choices);
+        this.state = new PollState(poll, "room");
+
+        Random random = new Random(42);
+        this.names = new String[this.channels];
+        this.reports = new ArrayList<>();
+        for (int i = 0; i < this.channels; i++) {
+            this.names[i] = "channel-" + i;
+            this.state.setVotes(this.names[i], this.votes(random));
+        }
+        for (int i = 0; i < 1024; i++) {
+            this.reports.add(this.votes(random));
+        }
+    }
+
+    @Benchmark
+    public void setVotes() {
+        int index = this.next++;
+        this.state.setVotes(this.names[index % this.channels], this.reports.get(index & 1023));
+    }
+
+    @Benchmark
+    public Map<String, Integer> getResults() {
+        return this.state.getResults();
+    }
+
+    private Map<String, Integer> votes(Random random) {
+        Map<String, Integer> votes = new HashMap<>();
+        for (int i = 0; i < this.choices; i++) {
+            votes.put("choice-" + i, random.nextInt(10_000));
+        }
+        return votes;
+    }
+
+}
@@ -0,0 +1,107 @@
+package net.notfab.ttvsi.bench;
+
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
+import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
+import net.notfab.ttvsi.common.rewards.Reward;
+import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
+import net.notfab.ttvsi.common.trace.TraceContext;
+import net.notfab.ttvsi.server.websocket.Frame;
+import net.notfab.ttvsi.server.websocket.WireCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes the polymorphic {@link NetworkEvent}s the server sends most, in every wire encoding.
+ * Decoding goes through the {@code type} property like it does for client messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"REDEEM", "POLL_UPDATE", "REWARD_SYNC"})
+    public String event;
+
+    @Param({"JSON", "CBOR"})
+    public WireEncoding encoding;
+
+    private final WireCodec codec = new WireCodec();
+    private NetworkEvent payload;
+    private WebSocketMessage<?> encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        this.payload = switch (this.event) {
+            case "REDEEM" -> redeem();
+            case "POLL_UPDATE" -> pollUpdate();
+            case "REWARD_SYNC" -> rewardSync();
+            default -> throw new IllegalArgumentException(this.event);
+        };
+        this.encoded = this.codec.encode(this.payload, 1, 42, this.encoding);
+    }
+
+    @Benchmark
+    public WebSocketMessage<?> encode() throws IOException {
+        return this.codec.encode(this.payload, 1, 42, this.encoding);
+    }
+
+    @Benchmark
+    public WebSocketMessage<?> encodeUnsequenced() throws IOException {
+        return this.codec.encode(this.payload, 0, Frame.UNSEQUENCED, this.encoding);
+    }
+
+    @Benchmark
+    public NetworkEvent decode() throws IOException {
+        if (this.encoded instanceof BinaryMessage binary) {
+            return this.codec.decode(this.encoding, binary.getPayload().duplicate());
+        }
+        return this.codec.decode(((TextMessage) this.encoded).getPayload());
+    }
+
+    static RewardRedeemEvent redeem() {
+        RewardRedeemEvent redeem = new RewardRedeemEvent();
+        redeem.setId("92af127c-7326-4483-a52b-b0da0be61c01");
+        redeem.setReward("hydrate");
+        redeem.setUserId("cooler_user");
+        redeem.setUserName("Cooler_User");
+        redeem.setChannel("cool_user");
+        redeem.setInput("pogchamp");
+        redeem.setTrace(TraceContext.start(1_700_000_000_000L));
+        return redeem;
+    }
+
+    static ServerPollUpdateEvent pollUpdate() {
+        Map<String, Integer> votes = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            votes.put("choice-" + i, 1000 * (i + 1));
+        }
+        return new ServerPollUpdateEvent("poll", votes);
+    }
+
+    static RewardSyncEvent rewardSync() {
+        List<Reward> rewards = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Reward reward = new Reward();
+            reward.setId("reward-" + i);
+            reward.setTitle("Reward number " + i);
+            reward.setCost(100 * (i + 1));
+            reward.setColor("#9146FF");
+            reward.setCooldown(30);
+            reward.setPrompt("Does something on stream");
+            rewards.add(reward);
+        }
+        return new RewardSyncEvent(rewards, 7);
+    }
+
+}
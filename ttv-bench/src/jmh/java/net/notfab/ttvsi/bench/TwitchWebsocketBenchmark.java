@@ -0,0 +1,52 @@
+package net.notfab.ttvsi.bench;
+
+import net.notfab.ttvsi.client.twitch.TwitchWebsocket;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of EventSub payloads by {@link TwitchWebsocket#onMessage(String)}, using recorded samples from
+ * {@code src/jmh/resources/eventsub}. The socket never connects, published events go to a blackhole.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TwitchWebsocketBenchmark {
+
+    @Param({"reward_redemption", "poll_progress", "session_keepalive"})
+    public String payload;
+
+    private TwitchWebsocket socket;
+    private String message;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws IOException {
+        this.blackhole = blackhole;
+        this.socket = new TwitchWebsocket(URI.create("wss://eventsub.wss.twitch.tv/ws"), event -> this.blackhole.consume(event));
+        // Every message before the welcome is ignored
+        this.socket.onMessage(read("session_welcome"));
+        this.message = read(this.payload);
+    }
+
+    @Benchmark
+    public void onMessage() {
+        this.socket.onMessage(this.message);
+    }
+
+    private static String read(String name) throws IOException {
+        try (InputStream stream = TwitchWebsocketBenchmark.class.getResourceAsStream("/eventsub/" + name + ".json")) {
+            if (stream == null) {
+                throw new IOException("Missing sample " + name);
+            }
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+}
@@ -1,8 +1,11 @@
 package net.notfab.ttvsi.client;
 
 import com.formdev.flatlaf.themes.FlatMacLightLaf;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
 public class Application {
@@ -13,4 +16,9 @@ public class Application {
                 .headless(false).run(args);
     }
 
+    @Bean
+    public TraceMetrics traceMetrics(MeterRegistry registry) {
+        return new TraceMetrics(registry);
+    }
+
 }
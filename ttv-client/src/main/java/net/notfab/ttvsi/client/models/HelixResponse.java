@@ -0,0 +1,51 @@
+package net.notfab.ttvsi.client.models;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Response of a Helix call, the body is kept as text so error responses can be logged as they came
+ *
+ * @param code HTTP status code
+ * @param body response body, empty if there was none
+ */
+public record HelixResponse(int code, String body) {
+
+    public boolean isSuccessful() {
+        return this.code >= 200 && this.code < 300;
+    }
+
+    public JSONObject json() {
+        if (this.body.isBlank()) {
+            return new JSONObject();
+        }
+        try {
+            return new JSONObject(this.body);
+        } catch (JSONException ex) {
+            return new JSONObject();
+        }
+    }
+
+    /**
+     * Items of the {@code data} array every Helix response wraps its results in
+     */
+    public List<JSONObject> data() {
+        JSONArray data = this.json().optJSONArray("data");
+        List<JSONObject> items = new ArrayList<>();
+        if (data == null) {
+            return items;
+        }
+        for (int i = 0; i < data.length(); i++) {
+            JSONObject item = data.optJSONObject(i);
+            if (item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+}
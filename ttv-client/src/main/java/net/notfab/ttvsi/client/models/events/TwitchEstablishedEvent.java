@@ -2,6 +2,8 @@ package net.notfab.ttvsi.client.models.events;
 
 /**
  * Fired when twitch websocket was authenticated
+ *
+ * @param resumed true when an existing session moved to a new connection, its subscriptions are still registered
  */
-public record TwitchEstablishedEvent(String session) {
+public record TwitchEstablishedEvent(String session, boolean resumed) {
 }
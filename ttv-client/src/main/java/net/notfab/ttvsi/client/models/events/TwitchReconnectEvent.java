@@ -0,0 +1,9 @@
+package net.notfab.ttvsi.client.models.events;
+
+import java.net.URI;
+
+/**
+ * Fired when twitch asks to move the websocket to another url, the session and its subscriptions move with it
+ */
+public record TwitchReconnectEvent(URI url) {
+}
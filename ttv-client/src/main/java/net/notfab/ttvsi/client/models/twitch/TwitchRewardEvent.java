@@ -8,6 +8,8 @@ package net.notfab.ttvsi.client.models.twitch;
  * @param user_code User's login code
  * @param user_name User's display name
  * @param input     Optional reward input
+ * @param redeemed  Epoch millis at which Twitch says the reward was redeemed
  */
-public record TwitchRewardEvent(String id, String reward, String user_code, String user_name, String input) {
+public record TwitchRewardEvent(String id, String reward, String user_code, String user_name, String input,
+                                long redeemed) {
 }
@@ -0,0 +1,63 @@
+package net.notfab.ttvsi.client.network;
+
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.Framedata;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * permessage-deflate extension that keeps track of how much it saved.
+ * Frames below the threshold are sent uncompressed.
+ */
+public class MeteredDeflateExtension extends PerMessageDeflateExtension {
+
+    private final LongAdder rawBytes;
+    private final LongAdder compressedBytes;
+
+    public MeteredDeflateExtension(int threshold) {
+        this(threshold, new LongAdder(), new LongAdder());
+    }
+
+    private MeteredDeflateExtension(int threshold, LongAdder rawBytes, LongAdder compressedBytes) {
+        this.setThreshold(threshold);
+        this.rawBytes = rawBytes;
+        this.compressedBytes = compressedBytes;
+    }
+
+    @Override
+    public void encodeFrame(Framedata inputFrame) {
+        int before = inputFrame.getPayloadData().remaining();
+        super.encodeFrame(inputFrame);
+        this.rawBytes.add(before);
+        this.compressedBytes.add(inputFrame.getPayloadData().remaining());
+    }
+
+    /**
+     * Drafts copy their extensions for every connection, copies share the counters
+     */
+    @Override
+    public IExtension copyInstance() {
+        return new MeteredDeflateExtension(this.getThreshold(), this.rawBytes, this.compressedBytes);
+    }
+
+    public long getRawBytes() {
+        return this.rawBytes.sum();
+    }
+
+    public long getCompressedBytes() {
+        return this.compressedBytes.sum();
+    }
+
+    /**
+     * Bytes on the wire over bytes before compression for outgoing frames
+     */
+    public double getRatio() {
+        long raw = this.rawBytes.sum();
+        if (raw == 0) {
+            return 1.0;
+        }
+        return (double) this.compressedBytes.sum() / raw;
+    }
+
+}
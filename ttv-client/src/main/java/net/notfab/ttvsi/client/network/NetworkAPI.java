@@ -1,12 +1,18 @@
 package net.notfab.ttvsi.client.network;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import net.notfab.ttvsi.client.models.SocketState;
 import net.notfab.ttvsi.client.models.TwitchProfile;
 import net.notfab.ttvsi.client.models.events.TwitchTerminateEvent;
 import net.notfab.ttvsi.client.twitch.TwitchAPI;
 import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
 import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
@@ -24,14 +30,49 @@ public class NetworkAPI {
 
     private final ApplicationEventPublisher events;
     private final TwitchAPI twitch;
+    private final WireEncoding encoding;
+    private final MeteredDeflateExtension compression;
+    private final TraceMetrics traces;
     private final UUID clientId;
 
     private NetworkSocket socket;
 
-    public NetworkAPI(ApplicationEventPublisher events, TwitchAPI twitch) {
+    public NetworkAPI(
+            ApplicationEventPublisher events,
+            TwitchAPI twitch,
+            @Value("${ttv.network.encoding:JSON}") WireEncoding encoding,
+            @Value("${ttv.network.compression.enabled:true}") boolean compression,
+            @Value("${ttv.network.compression.threshold:256}") int threshold,
+            TraceMetrics traces,
+            MeterRegistry registry) {
         this.events = events;
         this.twitch = twitch;
+        this.encoding = encoding;
+        this.compression = compression ? new MeteredDeflateExtension(threshold) : null;
+        this.traces = traces;
         this.clientId = this.getClientId();
+        if (this.compression != null) {
+            this.registerCompressionMetrics(registry);
+        }
+    }
+
+    /**
+     * Same meters the server keeps for what it sends, over what this client sends
+     */
+    private void registerCompressionMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("ttv.compression.bytes", this.compression, MeteredDeflateExtension::getRawBytes)
+                .description("Uncompressed bytes sent to the server")
+                .baseUnit("bytes")
+                .tag("stage", "raw")
+                .register(registry);
+        FunctionCounter.builder("ttv.compression.bytes", this.compression, MeteredDeflateExtension::getCompressedBytes)
+                .description("Bytes sent to the server after compression")
+                .baseUnit("bytes")
+                .tag("stage", "compressed")
+                .register(registry);
+        Gauge.builder("ttv.compression.ratio", this.compression, MeteredDeflateExtension::getRatio)
+                .description("Compressed to uncompressed size ratio of everything sent to the server")
+                .register(registry);
     }
 
     @EventListener
@@ -71,7 +112,8 @@ public class NetworkAPI {
         }
         WsCredentials credentials = new WsCredentials(
                 this.clientId, profile.getChannelName(), code);
-        this.socket = new NetworkSocket(URI.create(url), this.events, credentials);
+        this.socket = new NetworkSocket(URI.create(url), this.events, credentials, this.encoding, this.compression,
+                this.traces);
         this.socket.connect();
     }
 
@@ -1,6 +1,7 @@
 package net.notfab.ttvsi.client.network;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -8,13 +9,19 @@ import net.notfab.ttvsi.client.models.SocketState;
 import net.notfab.ttvsi.client.models.events.NetworkStateEvent;
 import net.notfab.ttvsi.common.Headers;
 import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
 import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
+import net.notfab.ttvsi.common.trace.Traced;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
 import org.java_websocket.handshake.ServerHandshake;
 import org.springframework.context.ApplicationEventPublisher;
 
+import java.io.IOException;
 import java.net.ConnectException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
@@ -25,22 +32,37 @@ import java.util.concurrent.TimeUnit;
 public class NetworkSocket extends WebSocketClient {
 
     private final ApplicationEventPublisher publisher;
+    private final TraceMetrics traces;
     private final ObjectMapper mapper = new ObjectMapper();
-    private final Queue<String> buffer = new ConcurrentLinkedQueue<>();
+    private final Queue<NetworkEvent> buffer = new ConcurrentLinkedQueue<>();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
     @Getter
     private SocketState state;
 
+    // Encoding accepted by the server, JSON until the handshake says otherwise
+    private volatile WireEncoding encoding = WireEncoding.JSON;
+    private volatile ObjectMapper encodingMapper = this.mapper;
+
+    // Last room sequence number received and the epoch of the log that assigned it,
+    // sent back on reconnect to only receive missed messages
+    private volatile long lastSequence = -1;
+    private volatile long lastEpoch = 0;
+
     public NetworkSocket(
             URI uri,
             ApplicationEventPublisher publisher,
-            WsCredentials credentials) {
-        super(uri);
+            WsCredentials credentials,
+            WireEncoding encoding,
+            MeteredDeflateExtension compression,
+            TraceMetrics traces) {
+        super(uri, compression == null ? new Draft_6455() : new Draft_6455(compression));
         this.publisher = publisher;
+        this.traces = traces;
         this.addHeader(Headers.X_CLIENT_ID, credentials.clientId().toString());
         this.addHeader(Headers.X_TWITCH_ID, credentials.twitchId());
         this.addHeader(Headers.X_ROOM_ID, credentials.roomId());
+        this.addHeader(Headers.X_ENCODING, encoding.name());
         this.setConnectionLostTimeout(10);
         this.state = SocketState.DISCONNECTED;
         this.publisher.publishEvent(new NetworkStateEvent(this.state));
@@ -58,6 +80,13 @@ public class NetworkSocket extends WebSocketClient {
 
     @Override
     public void onOpen(ServerHandshake handshake) {
+        // Servers without binary support don't echo the header
+        WireEncoding accepted = WireEncoding.fromHeader(handshake.getFieldValue(Headers.X_ENCODING));
+        if (accepted != this.encoding) {
+            this.encoding = accepted;
+            this.encodingMapper = accepted.createMapper();
+        }
+        log.debug("Network encoding: {}", accepted);
         this.state = SocketState.CONNECTED;
         this.publisher.publishEvent(new NetworkStateEvent(this.state));
         this.sendBuffer();
@@ -66,6 +95,9 @@ public class NetworkSocket extends WebSocketClient {
     @Override
     public void onClose(int code, String reason, boolean remote) {
         log.warn("Disconnected from server ({} - {})", code, remote);
+        if (this.getDraft() instanceof Draft_6455 draft && draft.getExtension() instanceof MeteredDeflateExtension deflate) {
+            log.debug("Outgoing compression ratio: {}", deflate.getRatio());
+        }
         if (remote) {
             this.state = SocketState.CONNECTING;
             this.scheduler.schedule(this::reconnect, 5, TimeUnit.SECONDS);
@@ -76,17 +108,59 @@ public class NetworkSocket extends WebSocketClient {
         }
     }
 
+    @Override
+    public void reconnect() {
+        if (this.lastSequence >= 0) {
+            this.addHeader(Headers.X_LAST_SEQUENCE, String.valueOf(this.lastSequence));
+            this.addHeader(Headers.X_LAST_EPOCH, String.valueOf(this.lastEpoch));
+        }
+        super.reconnect();
+    }
+
     @Override
     public void onMessage(String message) {
         log.debug("Received from Network: {}", message);
         try {
-            NetworkEvent event = mapper.readValue(message, NetworkEvent.class);
-            this.publisher.publishEvent(event);
+            this.onMessage(this.mapper.readTree(message));
         } catch (JsonProcessingException ex) {
             log.error("Failed to parse network message", ex);
         }
     }
 
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        log.debug("Received {} bytes from Network", bytes.remaining());
+        try {
+            byte[] message = new byte[bytes.remaining()];
+            bytes.get(message);
+            this.onMessage(this.encodingMapper.readTree(message));
+        } catch (IOException ex) {
+            log.error("Failed to parse network message", ex);
+        }
+    }
+
+    private void onMessage(JsonNode node) throws JsonProcessingException {
+        JsonNode sequence = node.get(NetworkEvent.SEQUENCE);
+        if (sequence != null) {
+            long epoch = node.path(NetworkEvent.EPOCH).asLong();
+            if (epoch != this.lastEpoch) {
+                // Numbered by another log (other node, or recreated), sequences can't be compared
+                this.lastEpoch = epoch;
+                this.lastSequence = -1;
+            }
+            if (sequence.asLong() <= this.lastSequence) {
+                // Already seen before reconnecting
+                return;
+            }
+            this.lastSequence = sequence.asLong();
+        }
+        NetworkEvent event = this.mapper.treeToValue(node, NetworkEvent.class);
+        if (event instanceof Traced traced) {
+            this.traces.hop(traced, TraceMetrics.CLIENT_DELIVERED);
+        }
+        this.publisher.publishEvent(event);
+    }
+
     @Override
     public void onError(Exception exception) {
         if (exception instanceof ConnectException) {
@@ -101,14 +175,7 @@ public class NetworkSocket extends WebSocketClient {
     }
 
     public void emit(NetworkEvent payload) {
-        String message;
-        try {
-            message = this.mapper.writeValueAsString(payload);
-        } catch (JsonProcessingException ex) {
-            log.error("Failed to process network event", ex);
-            return;
-        }
-        buffer.add(message);
+        buffer.add(payload);
         if (this.state == SocketState.CONNECTED) {
             this.sendBuffer();
         }
@@ -119,8 +186,19 @@ public class NetworkSocket extends WebSocketClient {
             return;
         }
         do {
-            String message = buffer.peek();
-            this.send(message);
+            NetworkEvent payload = buffer.peek();
+            if (payload instanceof Traced traced) {
+                this.traces.hop(traced, TraceMetrics.CLIENT_SENT);
+            }
+            try {
+                if (this.encoding.isBinary()) {
+                    this.send(this.encodingMapper.writeValueAsBytes(payload));
+                } else {
+                    this.send(this.mapper.writeValueAsString(payload));
+                }
+            } catch (JsonProcessingException ex) {
+                log.error("Failed to process network event", ex);
+            }
             buffer.poll();
         } while (!buffer.isEmpty());
     }
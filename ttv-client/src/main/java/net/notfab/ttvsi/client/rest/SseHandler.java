@@ -8,6 +8,7 @@ import net.notfab.ttvsi.common.polls.server.ServerPollFinishedEvent;
 import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
 import net.notfab.ttvsi.common.protocol.RoomMemberSyncEvent;
 import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
 import org.springframework.context.event.EventListener;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -22,6 +23,11 @@ public class SseHandler {
 
     private final SseEmitter emitter = new SseEmitter();
     private final ObjectMapper mapper = new ObjectMapper();
+    private final TraceMetrics traces;
+
+    public SseHandler(TraceMetrics traces) {
+        this.traces = traces;
+    }
 
     @GetMapping("sse")
     public SseEmitter getSseEmitter() {
@@ -46,6 +52,7 @@ public class SseHandler {
     @EventListener
     public void onRewardRedeemed(RewardRedeemEvent event) {
         this.broadcast(event);
+        this.traces.record(event, TraceMetrics.OVERLAY_SSE);
     }
 
     @EventListener
@@ -9,6 +9,7 @@ import net.notfab.ttvsi.common.polls.server.ServerPollFinishedEvent;
 import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
 import net.notfab.ttvsi.common.protocol.RoomMemberSyncEvent;
 import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.EventListener;
 import org.springframework.web.socket.CloseStatus;
@@ -29,6 +30,11 @@ public class WebsocketHandler extends TextWebSocketHandler implements WebSocketC
 
     private final Map<String, WebSocketSession> sessions = new HashMap<>();
     private final ObjectMapper mapper = new ObjectMapper();
+    private final TraceMetrics traces;
+
+    public WebsocketHandler(TraceMetrics traces) {
+        this.traces = traces;
+    }
 
     @Override
     public void registerWebSocketHandlers(@Nonnull WebSocketHandlerRegistry registry) {
@@ -64,6 +70,7 @@ public class WebsocketHandler extends TextWebSocketHandler implements WebSocketC
     @EventListener
     public void onRewardRedeemed(RewardRedeemEvent event) {
         this.broadcast(event);
+        this.traces.record(event, TraceMetrics.OVERLAY_WEBSOCKET);
     }
 
     @EventListener
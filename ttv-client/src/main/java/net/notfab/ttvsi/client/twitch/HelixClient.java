@@ -0,0 +1,228 @@
+package net.notfab.ttvsi.client.twitch;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.client.models.HelixResponse;
+import net.notfab.ttvsi.client.models.TwitchProfile;
+import okhttp3.*;
+import org.jetbrains.annotations.NotNull;
+import org.json.JSONObject;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous Helix calls on the shared {@link TwitchAPI#getHttp() http client}, authenticated with the current profile.
+ * Futures complete on OkHttp's dispatcher threads, never on the caller's, and fail only when Twitch could not
+ * be reached; error statuses complete normally so callers can log what Twitch said.
+ * <p>
+ * Calls wait in a queue ordered by {@link HelixPriority} and go out as the {@link HelixRateLimiter rate limit}
+ * allows, authenticated with the token current when they are sent. Calls answered with 429 are retried with backoff,
+ * as are GET, PATCH and DELETE calls answered with 5xx or that could not reach Twitch. A POST may have been accepted
+ * before failing, retrying it could create a second poll or reward, so those failures go back to the caller.
+ */
+@Slf4j
+@Service
+public class HelixClient {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long BACKOFF_MILLIS = 500;
+
+    private final TwitchAPI api;
+    private final HelixRateLimiter rateLimit = new HelixRateLimiter();
+    private final AtomicLong sequence = new AtomicLong();
+    private final PriorityBlockingQueue<HelixCall> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing(HelixCall::priority).thenComparingLong(HelixCall::sequence));
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor();
+    private final Thread dispatcher;
+
+    private final Timer queueTime;
+    private final Counter rateLimited;
+    private final Counter serverErrors;
+    private final Counter networkErrors;
+
+    public HelixClient(TwitchAPI api, MeterRegistry registry) {
+        this.api = api;
+        for (HelixPriority priority : HelixPriority.values()) {
+            Gauge.builder("ttv.helix.queue", this.queue, queue -> queue.stream()
+                            .filter(call -> call.priority() == priority)
+                            .count())
+                    .description("Helix calls waiting to be sent")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(registry);
+        }
+        Gauge.builder("ttv.helix.ratelimit.remaining", this.rateLimit, HelixRateLimiter::getRemaining)
+                .description("Helix rate limit points believed to be left")
+                .register(registry);
+        this.queueTime = Timer.builder("ttv.helix.queue.time")
+                .description("Time from a Helix call being queued until it was sent")
+                .register(registry);
+        this.rateLimited = this.retryCounter(registry, "rate_limited");
+        this.serverErrors = this.retryCounter(registry, "server_error");
+        this.networkErrors = this.retryCounter(registry, "network_error");
+        this.dispatcher = Thread.ofVirtual().name("helix-dispatcher").start(this::dispatch);
+    }
+
+    public CompletableFuture<HelixResponse> get(HelixPriority priority, HttpUrl url) {
+        return this.call(priority, url, "GET", null);
+    }
+
+    public CompletableFuture<HelixResponse> post(HelixPriority priority, HttpUrl url, JSONObject body) {
+        return this.call(priority, url, "POST", body);
+    }
+
+    public CompletableFuture<HelixResponse> patch(HelixPriority priority, HttpUrl url, JSONObject body) {
+        return this.call(priority, url, "PATCH", body);
+    }
+
+    public CompletableFuture<HelixResponse> delete(HelixPriority priority, HttpUrl url) {
+        return this.call(priority, url, "DELETE", null);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.dispatcher.interrupt();
+        this.retries.shutdownNow();
+        HelixCall call;
+        while ((call = this.queue.poll()) != null) {
+            call.future().cancel(false);
+        }
+    }
+
+    private CompletableFuture<HelixResponse> call(HelixPriority priority, HttpUrl url, String method, JSONObject body) {
+        TwitchProfile profile = this.api.getProfile();
+        if (profile == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Twitch is not authorized"));
+        }
+        // Authenticated when sent, the token may be refreshed while the call waits
+        Request request = new Request.Builder()
+                .url(url)
+                .method(method, body == null ? null : RequestBody.create(body.toString(), JSON))
+                .build();
+        HelixCall call = new HelixCall(priority, this.sequence.incrementAndGet(), request, new CompletableFuture<>(), 1,
+                System.nanoTime());
+        this.queue.add(call);
+        return call.future();
+    }
+
+    /**
+     * Sends queued calls one at a time as rate limit points become available
+     */
+    private void dispatch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                HelixCall call = this.queue.take();
+                if (call.future().isDone()) {
+                    continue;
+                }
+                long wait = this.rateLimit.acquire();
+                if (wait > 0) {
+                    // Put it back, something more urgent may be queued by the time a point is available
+                    this.queue.add(call);
+                    Thread.sleep(wait);
+                    continue;
+                }
+                this.send(call);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void send(HelixCall call) {
+        if (call.attempt() == 1) {
+            this.queueTime.record(System.nanoTime() - call.queued(), TimeUnit.NANOSECONDS);
+        }
+        TwitchProfile profile = this.api.getProfile();
+        if (profile == null) {
+            call.future().completeExceptionally(new IllegalStateException("Twitch is not authorized"));
+            return;
+        }
+        Request request = call.request().newBuilder()
+                .header("Authorization", "Bearer " + profile.getAccessToken())
+                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
+                .build();
+        boolean idempotent = !"POST".equals(request.method());
+        Call http = this.api.getHttp().newCall(request);
+        call.future().whenComplete((response, ex) -> {
+            if (call.future().isCancelled()) {
+                http.cancel();
+            }
+        });
+        http.enqueue(new Callback() {
+            @Override
+            public void onFailure(@NotNull Call http, @NotNull IOException ex) {
+                if (!idempotent || !retry(call, networkErrors, BACKOFF_MILLIS << (call.attempt() - 1))) {
+                    call.future().completeExceptionally(ex);
+                }
+            }
+
+            @Override
+            public void onResponse(@NotNull Call http, @NotNull Response response) {
+                try (response; ResponseBody responseBody = response.body()) {
+                    rateLimit.update(response.headers());
+                    if (response.code() == 429 && retry(call, rateLimited, rateLimit.exhausted())) {
+                        return;
+                    } else if (response.code() >= 500 && idempotent
+                            && retry(call, serverErrors, BACKOFF_MILLIS << (call.attempt() - 1))) {
+                        return;
+                    }
+                    String text = responseBody == null ? "" : responseBody.string();
+                    call.future().complete(new HelixResponse(response.code(), text));
+                } catch (IOException ex) {
+                    call.future().completeExceptionally(ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Queue a call again after a delay, keeping its place among calls of the same priority
+     *
+     * @return false if the call ran out of attempts
+     */
+    private boolean retry(HelixCall call, Counter reason, long delayMillis) {
+        if (call.attempt() >= MAX_ATTEMPTS || call.future().isDone()) {
+            return false;
+        }
+        reason.increment();
+        log.debug("Retrying {} {} in {}ms", call.request().method(), call.request().url().encodedPath(), delayMillis);
+        try {
+            this.retries.schedule(() -> this.queue.add(call.next()), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    private Counter retryCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("ttv.helix.retries")
+                .description("Helix calls retried")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * A Helix call waiting for its turn
+     *
+     * @param sequence order in which it was first queued, ties between equal priorities
+     * @param queued   nanoTime at which it was first queued
+     */
+    private record HelixCall(HelixPriority priority, long sequence, Request request,
+                             CompletableFuture<HelixResponse> future, int attempt, long queued) {
+
+        HelixCall next() {
+            return new HelixCall(this.priority, this.sequence, this.request, this.future, this.attempt + 1, this.queued);
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package net.notfab.ttvsi.client.twitch;
+
+/**
+ * Order in which queued Helix calls are sent when the rate limit is tight, most urgent first
+ */
+public enum HelixPriority {
+
+    /**
+     * Viewers are waiting on it, eg: starting a poll
+     */
+    HIGH,
+
+    /**
+     * Keeps twitch in sync with the room, eg: subscriptions and new rewards
+     */
+    NORMAL,
+
+    /**
+     * Cleanup that can wait, eg: deleting stale rewards
+     */
+    LOW
+
+}
@@ -0,0 +1,87 @@
+package net.notfab.ttvsi.client.twitch;
+
+import okhttp3.Headers;
+
+/**
+ * Local view of the Helix rate limit bucket, corrected by the {@code Ratelimit-*} headers of every response.
+ * Twitch refills the bucket continuously over a minute, points are spent here as calls go out
+ * so a burst slows down before Twitch starts answering 429.
+ */
+public class HelixRateLimiter {
+
+    private static final long REFILL_WINDOW = 60_000;
+
+    private int limit = 800;
+    private double points = 800;
+    private long updated = System.currentTimeMillis();
+    // Epoch millis at which twitch says the bucket is full again
+    private long reset;
+
+    /**
+     * Spend a point for a call
+     *
+     * @return 0 if the call can go out now, otherwise millis to wait before trying again
+     */
+    public synchronized long acquire() {
+        this.refill();
+        if (this.points >= 1) {
+            this.points--;
+            return 0;
+        }
+        return (long) Math.ceil((1 - this.points) * REFILL_WINDOW / this.limit);
+    }
+
+    /**
+     * Take the bucket state reported by twitch
+     */
+    public synchronized void update(Headers headers) {
+        Integer limit = this.parse(headers.get("Ratelimit-Limit"));
+        Integer remaining = this.parse(headers.get("Ratelimit-Remaining"));
+        Integer reset = this.parse(headers.get("Ratelimit-Reset"));
+        if (limit != null && limit > 0) {
+            this.limit = limit;
+        }
+        if (remaining != null) {
+            this.points = Math.min(this.limit, remaining);
+            this.updated = System.currentTimeMillis();
+        }
+        if (reset != null) {
+            this.reset = reset * 1000L;
+        }
+    }
+
+    /**
+     * Twitch answered 429, the bucket is empty whatever we thought
+     *
+     * @return millis to wait before retrying
+     */
+    public synchronized long exhausted() {
+        this.points = 0;
+        this.updated = System.currentTimeMillis();
+        long untilReset = this.reset - this.updated;
+        return Math.max(untilReset, REFILL_WINDOW / this.limit);
+    }
+
+    public synchronized int getRemaining() {
+        this.refill();
+        return (int) this.points;
+    }
+
+    private void refill() {
+        long now = System.currentTimeMillis();
+        this.points = Math.min(this.limit, this.points + (double) (now - this.updated) * this.limit / REFILL_WINDOW);
+        this.updated = now;
+    }
+
+    private Integer parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package net.notfab.ttvsi.client.twitch;
+
+import net.notfab.ttvsi.common.rewards.Reward;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes needed to make the custom rewards on twitch match the rewards of a room
+ *
+ * @param kept    rewards already matching on twitch, reward id to twitch id
+ * @param creates rewards missing on twitch
+ * @param updates rewards on twitch with outdated settings, twitch id to reward
+ * @param deletes twitch ids of rewards the room no longer has
+ */
+public record RewardPlan(Map<String, String> kept, List<Reward> creates, Map<String, Reward> updates,
+                         List<String> deletes) {
+
+    public boolean isEmpty() {
+        return this.creates.isEmpty() && this.updates.isEmpty() && this.deletes.isEmpty();
+    }
+
+}
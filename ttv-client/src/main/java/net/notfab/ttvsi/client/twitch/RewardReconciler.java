@@ -0,0 +1,382 @@
+package net.notfab.ttvsi.client.twitch;
+
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.client.models.HelixResponse;
+import net.notfab.ttvsi.client.models.TwitchProfile;
+import net.notfab.ttvsi.common.rewards.Reward;
+import okhttp3.HttpUrl;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Makes the custom rewards on twitch match a set of rewards with as few calls as possible.
+ * Keeps a view of the manageable rewards on twitch, fetched once and then updated from the calls made,
+ * diffs against it and runs the resulting {@link RewardPlan} concurrently.
+ * <p>
+ * Callers run one reconciliation at a time.
+ */
+@Slf4j
+@Service
+public class RewardReconciler {
+
+    private final TwitchAPI api;
+    private final HelixClient helix;
+    private final int parallelism;
+
+    // <twitch id, settings in create/update form>
+    private final Map<String, JSONObject> cache = new ConcurrentHashMap<>();
+    // Cache must be fetched again before the next plan, true until the first fetch or after a failed call
+    private volatile boolean stale = true;
+
+    public RewardReconciler(
+            TwitchAPI api,
+            HelixClient helix,
+            @Value("${ttv.twitch.reconcile-parallelism:8}") int parallelism) {
+        this.api = api;
+        this.helix = helix;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Create, update and delete rewards on twitch until they match
+     *
+     * @param desired rewards the room has
+     * @param known   twitch ids previously assigned to rewards, by reward id
+     * @return twitch ids of every desired reward present on twitch, by reward id
+     */
+    public CompletableFuture<Map<String, String>> reconcile(Collection<Reward> desired, Map<String, String> known) {
+        CompletableFuture<Boolean> refresh = this.stale ? this.refresh() : CompletableFuture.completedFuture(true);
+        return refresh.thenCompose(refreshed -> {
+            if (!refreshed) {
+                // Without a view of twitch every reward would look missing, keep what we had instead
+                Map<String, String> previous = new HashMap<>();
+                desired.forEach(reward -> {
+                    if (known.containsKey(reward.getId())) {
+                        previous.put(reward.getId(), known.get(reward.getId()));
+                    }
+                });
+                return CompletableFuture.completedFuture(previous);
+            }
+            RewardPlan plan = this.plan(desired, known);
+            log.info("Reward plan: {} kept, {} to create, {} to update, {} to delete", plan.kept().size(),
+                    plan.creates().size(), plan.updates().size(), plan.deletes().size());
+            return this.execute(plan);
+        });
+    }
+
+    /**
+     * Whether the last reconciliation left twitch in doubt: a call failed, or twitch could not be fetched
+     */
+    public boolean isStale() {
+        return this.stale;
+    }
+
+    /**
+     * Diff rewards against the cached view of twitch.
+     * Rewards are matched by the twitch id they had before, then by title since titles are unique on twitch.
+     */
+    public RewardPlan plan(Collection<Reward> desired, Map<String, String> known) {
+        Map<String, String> byTitle = new HashMap<>();
+        this.cache.forEach((id, settings) -> byTitle.put(settings.optString("title"), id));
+
+        Set<String> claimed = new HashSet<>();
+        Map<String, String> kept = new HashMap<>();
+        List<Reward> creates = new ArrayList<>();
+        Map<String, Reward> updates = new HashMap<>();
+        for (Reward reward : desired) {
+            String twitch = known.get(reward.getId());
+            if (twitch == null || !this.cache.containsKey(twitch) || claimed.contains(twitch)) {
+                twitch = byTitle.get(reward.getTitle());
+            }
+            if (twitch == null || !claimed.add(twitch)) {
+                creates.add(reward);
+            } else if (this.matches(this.toTwitch(reward), this.cache.get(twitch))) {
+                kept.put(reward.getId(), twitch);
+            } else {
+                updates.put(twitch, reward);
+            }
+        }
+        List<String> deletes = this.cache.keySet().stream()
+                .filter(id -> !claimed.contains(id))
+                .toList();
+        return new RewardPlan(kept, creates, updates, deletes);
+    }
+
+    /**
+     * Runs every call of a plan concurrently, up to the configured parallelism.
+     * Creates and renames that take the title of a reward being deleted or renamed wait for those to finish first.
+     */
+    private CompletableFuture<Map<String, String>> execute(RewardPlan plan) {
+        Map<String, String> result = new ConcurrentHashMap<>(plan.kept());
+        Set<String> freed = new HashSet<>();
+        List<Supplier<CompletableFuture<Void>>> first = new ArrayList<>();
+        List<Supplier<CompletableFuture<Void>>> second = new ArrayList<>();
+
+        for (String twitch : plan.deletes()) {
+            freed.add(this.cache.get(twitch).optString("title"));
+            first.add(() -> this.delete(twitch));
+        }
+        plan.updates().forEach((twitch, reward) -> {
+            String previous = this.cache.get(twitch).optString("title");
+            if (!previous.equals(reward.getTitle())) {
+                freed.add(previous);
+            }
+        });
+        plan.updates().forEach((twitch, reward) -> {
+            String previous = this.cache.get(twitch).optString("title");
+            Supplier<CompletableFuture<Void>> update = () -> this.update(twitch, reward)
+                    .thenAccept(ignored -> result.put(reward.getId(), twitch));
+            boolean waits = !previous.equals(reward.getTitle()) && freed.contains(reward.getTitle());
+            (waits ? second : first).add(update);
+        });
+        for (Reward reward : plan.creates()) {
+            Supplier<CompletableFuture<Void>> create = () -> this.create(reward).thenAccept(twitch -> {
+                if (twitch != null) {
+                    result.put(reward.getId(), twitch);
+                }
+            });
+            (freed.contains(reward.getTitle()) ? second : first).add(create);
+        }
+        return this.run(first)
+                .thenCompose(ignored -> this.run(second))
+                .thenApply(ignored -> result);
+    }
+
+    private CompletableFuture<Void> run(List<Supplier<CompletableFuture<Void>>> tasks) {
+        AtomicInteger next = new AtomicInteger();
+        CompletableFuture<?>[] lanes = new CompletableFuture[Math.min(this.parallelism, tasks.size())];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = this.lane(tasks, next);
+        }
+        return CompletableFuture.allOf(lanes);
+    }
+
+    /**
+     * Runs tasks one after another until none are left, several lanes share the same list
+     */
+    private CompletableFuture<Void> lane(List<Supplier<CompletableFuture<Void>>> tasks, AtomicInteger next) {
+        int index = next.getAndIncrement();
+        if (index >= tasks.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return tasks.get(index).get()
+                .exceptionally(ex -> {
+                    log.error("Reward change failed", ex);
+                    return null;
+                })
+                .thenCompose(ignored -> this.lane(tasks, next));
+    }
+
+    /**
+     * Replace the cached view with the manageable rewards currently on twitch
+     */
+    private CompletableFuture<Boolean> refresh() {
+        TwitchProfile profile = api.getProfile();
+        if (profile == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        HttpUrl url = this.api.helix("channel_points/custom_rewards")
+                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
+                .addQueryParameter("only_manageable_rewards", "true")
+                .build();
+        return this.helix.get(HelixPriority.NORMAL, url).handle((response, ex) -> {
+            if (ex != null) {
+                log.error("Failed to fetch rewards from twitch", ex);
+                return false;
+            } else if (!response.isSuccessful()) {
+                log.error("Failed to fetch active rewards: {}", response.body());
+                return false;
+            }
+            this.cache.clear();
+            for (JSONObject item : response.data()) {
+                this.cache.put(item.getString("id"), this.fromTwitch(item));
+            }
+            this.stale = false;
+            if (this.cache.isEmpty()) {
+                log.info("No rewards are registered on twitch");
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Registers a custom channel point reward on twitch
+     *
+     * @return the twitch id of the reward, null if it could not be created
+     */
+    private CompletableFuture<String> create(Reward reward) {
+        TwitchProfile profile = api.getProfile();
+        if (profile == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        JSONObject settings = this.toTwitch(reward);
+        HttpUrl url = this.api.helix("channel_points/custom_rewards")
+                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
+                .build();
+        return this.helix.post(HelixPriority.NORMAL, url, settings).handle((response, ex) -> {
+            if (!this.succeeded(response, ex, "create reward " + reward.getId())) {
+                return null;
+            }
+            List<JSONObject> data = response.data();
+            if (data.isEmpty()) {
+                return null;
+            }
+            String twitch = data.getFirst().getString("id");
+            this.cache.put(twitch, settings);
+            return twitch;
+        });
+    }
+
+    /**
+     * Changes the settings of a custom reward in place, keeping its twitch id
+     */
+    private CompletableFuture<Void> update(String twitch, Reward reward) {
+        TwitchProfile profile = api.getProfile();
+        if (profile == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        JSONObject settings = this.toTwitch(reward);
+        HttpUrl url = this.api.helix("channel_points/custom_rewards")
+                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
+                .addQueryParameter("id", twitch)
+                .build();
+        return this.helix.patch(HelixPriority.NORMAL, url, settings).handle((response, ex) -> {
+            if (this.succeeded(response, ex, "update reward " + reward.getId())) {
+                this.cache.put(twitch, settings);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Deletes a custom reward from twitch
+     */
+    private CompletableFuture<Void> delete(String twitch) {
+        TwitchProfile profile = api.getProfile();
+        if (profile == null) {
+            return CompletableFuture.completedFuture(null);
+        } else if (!api.getDestructive().get()) {
+            log.info("Skipped deleting reward ({}) because destructive actions are disabled", twitch);
+            return CompletableFuture.completedFuture(null);
+        }
+        HttpUrl url = this.api.helix("channel_points/custom_rewards")
+                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
+                .addQueryParameter("id", twitch)
+                .build();
+        return this.helix.delete(HelixPriority.LOW, url).handle((response, ex) -> {
+            if (this.succeeded(response, ex, "delete reward " + twitch) || (response != null && response.code() == 404)) {
+                this.cache.remove(twitch);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Logs failed calls and marks the cache stale, the view of twitch can't be trusted after one
+     */
+    private boolean succeeded(HelixResponse response, Throwable ex, String action) {
+        if (ex != null) {
+            log.error("Failed to {} on twitch", action, ex);
+        } else if (!response.isSuccessful()) {
+            log.error("Failed to {} on twitch (code {}): {}", action, response.code(), response.body());
+        } else {
+            return true;
+        }
+        this.stale = true;
+        return false;
+    }
+
+    /**
+     * Settings of a reward as sent to twitch when creating or updating it.
+     * Disabled limits are sent explicitly so an update clears them.
+     */
+    private JSONObject toTwitch(Reward reward) {
+        JSONObject object = new JSONObject();
+        object.put("title", reward.getTitle());
+        object.put("cost", reward.getCost());
+        object.put("should_redemptions_skip_request_queue", true);
+        boolean input = reward.getPrompt() != null && !reward.getPrompt().isBlank();
+        object.put("is_user_input_required", input);
+        if (input) {
+            object.put("prompt", reward.getPrompt());
+        }
+        if (reward.getColor() != null) {
+            object.put("background_color", reward.getColor());
+        }
+        boolean perStream = reward.getLimitPerStream() != null && reward.getLimitPerStream() > 0;
+        object.put("is_max_per_stream_enabled", perStream);
+        if (perStream) {
+            object.put("max_per_stream", reward.getLimitPerStream());
+        }
+        boolean perUser = reward.getLimitPerUser() != null && reward.getLimitPerUser() > 0;
+        object.put("is_max_per_user_per_stream_enabled", perUser);
+        if (perUser) {
+            object.put("max_per_user_per_stream", reward.getLimitPerUser());
+        }
+        boolean cooldown = reward.getCooldown() != null && reward.getCooldown() > 1;
+        object.put("is_global_cooldown_enabled", cooldown);
+        if (cooldown) {
+            object.put("global_cooldown_seconds", reward.getCooldown());
+        }
+        return object;
+    }
+
+    /**
+     * Settings of a reward returned by twitch, in the same form as {@link #toTwitch(Reward)}
+     */
+    private JSONObject fromTwitch(JSONObject item) {
+        JSONObject object = new JSONObject();
+        object.put("title", item.optString("title"));
+        object.put("cost", item.optInt("cost"));
+        object.put("should_redemptions_skip_request_queue", item.optBoolean("should_redemptions_skip_request_queue"));
+        boolean input = item.optBoolean("is_user_input_required");
+        object.put("is_user_input_required", input);
+        if (input) {
+            object.put("prompt", item.optString("prompt"));
+        }
+        if (item.has("background_color")) {
+            object.put("background_color", item.optString("background_color"));
+        }
+        this.setting(object, item.optJSONObject("max_per_stream_setting"),
+                "is_max_per_stream_enabled", "max_per_stream");
+        this.setting(object, item.optJSONObject("max_per_user_per_stream_setting"),
+                "is_max_per_user_per_stream_enabled", "max_per_user_per_stream");
+        this.setting(object, item.optJSONObject("global_cooldown_setting"),
+                "is_global_cooldown_enabled", "global_cooldown_seconds");
+        return object;
+    }
+
+    /**
+     * Flatten one of the nested {@code {"is_enabled", value}} settings twitch returns
+     */
+    private void setting(JSONObject object, JSONObject setting, String enabled, String value) {
+        boolean on = setting != null && setting.optBoolean("is_enabled");
+        object.put(enabled, on);
+        if (on) {
+            object.put(value, setting.optInt(value));
+        }
+    }
+
+    /**
+     * Whether every setting we care about is already applied, settings we don't send (eg: color) are ignored
+     */
+    private boolean matches(JSONObject desired, JSONObject current) {
+        if (current == null) {
+            return false;
+        }
+        for (String key : desired.keySet()) {
+            if (!String.valueOf(desired.get(key)).equalsIgnoreCase(String.valueOf(current.opt(key)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -3,9 +3,14 @@ package net.notfab.ttvsi.client.twitch;
 import lombok.Getter;
 import lombok.Setter;
 import net.notfab.ttvsi.client.models.TwitchProfile;
-import okhttp3.OkHttpClient;
+import okhttp3.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Getter
@@ -13,9 +18,52 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class TwitchAPI {
 
     public static final String TWITCH_APP_CLIENT_ID = "05gxk5g7jaqr7lhlvgqjwxkoba7s6v";
-    private final OkHttpClient http = new OkHttpClient();
+    private final OkHttpClient http = createHttpClient();
     private final AtomicBoolean destructive = new AtomicBoolean(false);
+    private final HttpUrl helixUrl;
+    private final HttpUrl oauthUrl;
+    private final String eventSubUrl;
     @Setter
     private TwitchProfile profile;
 
+    public TwitchAPI(
+            @Value("${ttv.twitch.helix-url:https://api.twitch.tv/helix}") String helixUrl,
+            @Value("${ttv.twitch.oauth-url:https://id.twitch.tv/oauth2}") String oauthUrl,
+            @Value("${ttv.twitch.eventsub-url:wss://eventsub.wss.twitch.tv/ws}") String eventSubUrl) {
+        this.helixUrl = Objects.requireNonNull(HttpUrl.parse(helixUrl), "Invalid helix url");
+        this.oauthUrl = Objects.requireNonNull(HttpUrl.parse(oauthUrl), "Invalid oauth url");
+        this.eventSubUrl = eventSubUrl;
+    }
+
+    /**
+     * Shared by every Twitch call. Helix speaks HTTP/2 so concurrent calls are multiplexed over a few pooled
+     * connections, the dispatcher limit bounds how many are in flight at once.
+     */
+    private static OkHttpClient createHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(32);
+        dispatcher.setMaxRequestsPerHost(16);
+        return new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(4, 5, TimeUnit.MINUTES))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(Duration.ofSeconds(5))
+                .callTimeout(Duration.ofSeconds(15))
+                .build();
+    }
+
+    /**
+     * Helix endpoint below the configured base url, eg: {@code helix("polls")}
+     */
+    public HttpUrl.Builder helix(String path) {
+        return this.helixUrl.newBuilder().addPathSegments(path);
+    }
+
+    /**
+     * OAuth endpoint below the configured base url, eg: {@code oauth("validate")}
+     */
+    public HttpUrl.Builder oauth(String path) {
+        return this.oauthUrl.newBuilder().addPathSegments(path);
+    }
+
 }
@@ -5,17 +5,17 @@ import net.notfab.ttvsi.client.models.TwitchCallbackDetails;
 import net.notfab.ttvsi.client.models.TwitchProfile;
 import net.notfab.ttvsi.client.models.events.TwitchAuthorizedEvent;
 import net.notfab.ttvsi.client.models.events.TwitchEstablishedEvent;
+import net.notfab.ttvsi.client.models.events.TwitchReconnectEvent;
 import net.notfab.ttvsi.client.models.events.TwitchTerminateEvent;
-import okhttp3.*;
-import org.json.JSONArray;
+import okhttp3.HttpUrl;
 import org.json.JSONObject;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -23,13 +23,17 @@ import java.util.stream.Collectors;
 public class TwitchEventManager {
 
     private final TwitchAPI api;
+    private final HelixClient helix;
     private final ApplicationEventPublisher publisher;
     private final Set<String> events;
 
     private TwitchWebsocket socket;
+    // Connection resuming the session at the url twitch asked for, replaces the socket once welcomed
+    private TwitchWebsocket pending;
 
-    public TwitchEventManager(TwitchAPI api, ApplicationEventPublisher events) {
+    public TwitchEventManager(TwitchAPI api, HelixClient helix, ApplicationEventPublisher events) {
         this.api = api;
+        this.helix = helix;
         this.publisher = events;
         this.events = new HashSet<>();
         this.events.add("channel.poll.progress");
@@ -38,7 +42,11 @@ public class TwitchEventManager {
     }
 
     @EventListener
-    public void onTerminate(TwitchTerminateEvent event) {
+    public synchronized void onTerminate(TwitchTerminateEvent event) {
+        if (this.pending != null) {
+            this.pending.retire();
+            this.pending = null;
+        }
         if (this.socket == null) {
             return;
         }
@@ -47,68 +55,92 @@ public class TwitchEventManager {
     }
 
     @EventListener
-    public void onTwitchAuthorized(TwitchAuthorizedEvent event) {
+    public synchronized void onTwitchAuthorized(TwitchAuthorizedEvent event) {
+        if (this.pending != null) {
+            this.pending.retire();
+            this.pending = null;
+        }
         if (this.socket != null) {
             log.info("Disconnecting old websocket");
             this.socket.terminate();
         }
-        this.socket = new TwitchWebsocket(this.publisher);
+        this.socket = new TwitchWebsocket(URI.create(this.api.getEventSubUrl()), this.publisher);
         this.socket.connect();
         log.info("Started twitch websocket connection");
     }
 
+    /**
+     * Twitch is moving the session, connect to the new url while the current connection keeps delivering
+     */
     @EventListener
-    public void onSocketConnected(TwitchEstablishedEvent event) {
-        List<TwitchCallbackDetails> subscriptions = this.getActiveSubscriptions();
-        for (TwitchCallbackDetails subscription : subscriptions) {
-            if (!subscription.isActive()) {
-                log.warn("Subscription {} is not active: {}", subscription.getId(), subscription.getStatus());
-                this.unregister(subscription);
+    public synchronized void onReconnectRequested(TwitchReconnectEvent event) {
+        if (this.pending != null) {
+            this.pending.retire();
+        }
+        this.pending = new TwitchWebsocket(event.url(), URI.create(this.api.getEventSubUrl()), this.publisher);
+        this.pending.connect();
+    }
+
+    @EventListener
+    public synchronized void onSocketConnected(TwitchEstablishedEvent event) {
+        if (this.pending != null) {
+            // The new connection was welcomed, the old one has nothing left to deliver
+            if (this.socket != null) {
+                this.socket.retire();
             }
+            this.socket = this.pending;
+            this.pending = null;
         }
-        Set<String> active = subscriptions.stream()
-                .filter(TwitchCallbackDetails::isActive)
-                .map(TwitchCallbackDetails::getType)
-                .collect(Collectors.toSet());
-        Set<String> events = new HashSet<>(this.events);
-        events.removeAll(active);
-        events.stream()
-                .filter(name -> !this.register(name, 1, event.session()))
-                .map(name -> "Failed to register for " + name + " events!")
-                .forEach(log::error);
+        if (event.resumed()) {
+            log.info("Twitch websocket moved, subscriptions carried over");
+            return;
+        }
+        this.getActiveSubscriptions().thenAccept(subscriptions -> {
+            for (TwitchCallbackDetails subscription : subscriptions) {
+                if (!subscription.isActive()) {
+                    log.warn("Subscription {} is not active: {}", subscription.getId(), subscription.getStatus());
+                    this.unregister(subscription);
+                }
+            }
+            Set<String> active = subscriptions.stream()
+                    .filter(TwitchCallbackDetails::isActive)
+                    .map(TwitchCallbackDetails::getType)
+                    .collect(Collectors.toSet());
+            Set<String> events = new HashSet<>(this.events);
+            events.removeAll(active);
+            for (String name : events) {
+                this.register(name, 1, event.session()).thenAccept(success -> {
+                    if (!success) {
+                        log.error("Failed to register for {} events!", name);
+                    }
+                });
+            }
+        });
     }
 
     private void unregister(TwitchCallbackDetails subscription) {
-        TwitchProfile profile = api.getProfile();
-        if (profile == null) {
+        if (api.getProfile() == null) {
             return;
         } else if (!api.getDestructive().get()) {
             log.info("Skipped deleting callback ({}) because destructive actions are disabled", subscription.getId());
             return;
         }
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse("https://api.twitch.tv/helix/eventsub/subscriptions"))
-                .newBuilder()
+        HttpUrl url = this.api.helix("eventsub/subscriptions")
                 .addQueryParameter("id", subscription.getId())
                 .build();
-        Request request = new Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .delete().build();
-        try (Response response = this.api.getHttp().newCall(request).execute()) {
-            boolean success = response.isSuccessful();
-            if (success) {
+        this.helix.delete(HelixPriority.LOW, url).whenComplete((response, ex) -> {
+            if (ex != null) {
+                log.error("Failed to remove old subscription", ex);
+            } else if (response.isSuccessful()) {
                 log.info("Removed failed subscription {}", subscription.getId());
             }
-        } catch (IOException ex) {
-            log.error("Failed to remove old subscription", ex);
-        }
+        });
     }
 
-    private boolean register(String event, int version, String session) {
+    private CompletableFuture<Boolean> register(String event, int version, String session) {
         TwitchProfile profile = api.getProfile();
         if (profile == null) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         JSONObject condition = new JSONObject();
@@ -120,64 +152,42 @@ public class TwitchEventManager {
         object.put("condition", condition);
         object.put("transport", new JSONObject().put("method", "websocket").put("session_id", session));
 
-        Request request = new Request.Builder()
-                .url("https://api.twitch.tv/helix/eventsub/subscriptions")
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .header("Content-Type", "application/json")
-                .post(RequestBody.create(object.toString().getBytes(StandardCharsets.UTF_8)))
-                .build();
-        try (Response response = this.api.getHttp().newCall(request).execute()) {
+        HttpUrl url = this.api.helix("eventsub/subscriptions").build();
+        return this.helix.post(HelixPriority.NORMAL, url, object).handle((response, ex) -> {
+            if (ex != null) {
+                log.error("Failed to register event listener", ex);
+                return false;
+            }
             boolean success = response.isSuccessful();
             if (success) {
                 log.info("Registered for {} events", event);
             }
             return success;
-        } catch (IOException ex) {
-            log.error("Failed to register event listener", ex);
-            return false;
-        }
+        });
     }
 
-    private List<TwitchCallbackDetails> getActiveSubscriptions() {
-        TwitchProfile profile = api.getProfile();
-        if (profile == null) {
-            return new ArrayList<>();
+    private CompletableFuture<List<TwitchCallbackDetails>> getActiveSubscriptions() {
+        if (api.getProfile() == null) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
         }
-        Request request = new Request.Builder()
-                .url("https://api.twitch.tv/helix/eventsub/subscriptions")
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .header("Content-Type", "application/json")
-                .get().build();
-        try (Response response = this.api.getHttp().newCall(request).execute()) {
-            if (!response.isSuccessful()) {
+        HttpUrl url = this.api.helix("eventsub/subscriptions").build();
+        return this.helix.get(HelixPriority.NORMAL, url).handle((response, ex) -> {
+            if (ex != null) {
+                log.error("Failed to fetch active event listeners", ex);
+                return new ArrayList<>();
+            } else if (!response.isSuccessful()) {
                 return new ArrayList<>();
             }
-            try (ResponseBody body = response.body()) {
-                if (body == null) {
-                    return new ArrayList<>();
-                }
-                JSONObject object = new JSONObject(body.string());
-                if (!object.has("total")) {
-                    return new ArrayList<>();
-                }
-                List<TwitchCallbackDetails> details = new ArrayList<>();
-                JSONArray data = object.getJSONArray("data");
-                for (int i = 0; i < data.length(); i++) {
-                    JSONObject sub = data.getJSONObject(i);
-                    TwitchCallbackDetails detail = new TwitchCallbackDetails();
-                    detail.setId(sub.getString("id"));
-                    detail.setType(sub.getString("type"));
-                    detail.setStatus(sub.getString("status"));
-                    details.add(detail);
-                }
-                return details;
+            List<TwitchCallbackDetails> details = new ArrayList<>();
+            for (JSONObject sub : response.data()) {
+                TwitchCallbackDetails detail = new TwitchCallbackDetails();
+                detail.setId(sub.getString("id"));
+                detail.setType(sub.getString("type"));
+                detail.setStatus(sub.getString("status"));
+                details.add(detail);
             }
-        } catch (IOException ex) {
-            log.error("Failed to fetch active event listeners", ex);
-            return new ArrayList<>();
-        }
+            return details;
+        });
     }
 
 }
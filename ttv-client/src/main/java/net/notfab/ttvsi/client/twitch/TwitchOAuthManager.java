@@ -7,7 +7,6 @@ import net.notfab.ttvsi.client.models.TwitchProfile;
 import net.notfab.ttvsi.client.models.TwitchResponse;
 import net.notfab.ttvsi.client.models.events.TwitchAuthorizedEvent;
 import net.notfab.ttvsi.client.models.events.TwitchTerminateEvent;
-import okhttp3.HttpUrl;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
@@ -16,7 +15,6 @@ import org.springframework.stereotype.Service;
 
 import java.io.IOException;
 import java.util.HashSet;
-import java.util.Objects;
 import java.util.Set;
 
 @Slf4j
@@ -39,8 +37,7 @@ public class TwitchOAuthManager {
     }
 
     public String getOAuthUrl() {
-        return Objects.requireNonNull(HttpUrl.parse("https://id.twitch.tv/oauth2/authorize"))
-                .newBuilder()
+        return this.api.oauth("authorize")
                 .addQueryParameter("response_type", "token")
                 .addQueryParameter("client_id", TwitchAPI.TWITCH_APP_CLIENT_ID)
                 .addQueryParameter("redirect_uri", "http://localhost:5583")
@@ -50,7 +47,7 @@ public class TwitchOAuthManager {
 
     public boolean validate(String code) {
         Request request = new Request.Builder()
-                .url("https://id.twitch.tv/oauth2/validate")
+                .url(this.api.oauth("validate").build())
                 .header("Authorization", "OAuth " + code)
                 .build();
         try (Response response = this.api.getHttp().newCall(request).execute()) {
@@ -10,25 +10,33 @@ import net.notfab.ttvsi.common.polls.Poll;
 import net.notfab.ttvsi.common.polls.client.ClientPollFinishedEvent;
 import net.notfab.ttvsi.common.polls.client.ClientPollProgressEvent;
 import net.notfab.ttvsi.common.polls.server.ServerCreatePollEvent;
-import okhttp3.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Slf4j
 @Service
 public class TwitchPollManager {
 
     private final TwitchAPI api;
-    private final Map<String, Poll> registered = new HashMap<>();
+    private final HelixClient helix;
+    // Twitch poll id to poll, filled from http threads
+    private final Map<String, Poll> registered = new ConcurrentHashMap<>();
+    // Polls with a creation call in flight
+    private final Set<String> creating = ConcurrentHashMap.newKeySet();
     private final NetworkAPI network;
 
-    public TwitchPollManager(TwitchAPI api, NetworkAPI network) {
+    public TwitchPollManager(TwitchAPI api, HelixClient helix, NetworkAPI network) {
         this.api = api;
+        this.helix = helix;
         this.network = network;
     }
 
@@ -38,16 +46,18 @@ public class TwitchPollManager {
     @EventListener
     public void onPollCreateRequested(ServerCreatePollEvent event) {
         Poll poll = event.poll();
-        if (this.isPollRegistered(poll.getId())) {
+        if (this.isPollRegistered(poll.getId()) || !this.creating.add(poll.getId())) {
             log.warn("Poll {} is already registered", poll.getId());
             return;
         }
-        boolean created = this.create(event.poll());
-        if (!created) {
-            log.error("Poll {} failed to create", poll.getId());
-        } else {
-            log.info("Poll {} was created on twitch.tv", poll.getId());
-        }
+        this.create(event.poll()).thenAccept(created -> {
+            this.creating.remove(poll.getId());
+            if (!created) {
+                log.error("Poll {} failed to create", poll.getId());
+            } else {
+                log.info("Poll {} was created on twitch.tv", poll.getId());
+            }
+        });
     }
 
     private boolean isPollRegistered(String id) {
@@ -104,10 +114,10 @@ public class TwitchPollManager {
     /**
      * Creates a poll on twitch and starts tracking its progress
      */
-    private boolean create(Poll poll) {
+    private CompletableFuture<Boolean> create(Poll poll) {
         TwitchProfile profile = api.getProfile();
         if (profile == null) {
-            return false;
+            return CompletableFuture.completedFuture(false);
         }
 
         // "broadcaster_id":"141981764",
@@ -138,35 +148,21 @@ public class TwitchPollManager {
         }
         object.put("choices", choices);
 
-        Request request = new Request.Builder()
-                .url("https://api.twitch.tv/helix/polls")
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .header("Content-Type", "application/json")
-                .post(RequestBody.create(object.toString(), MediaType.parse("application/json")))
-                .build();
-        try (Response response = this.api.getHttp().newCall(request).execute(); ResponseBody body = response.body()) {
-            if (body == null) {
+        return this.helix.post(HelixPriority.HIGH, this.api.helix("polls").build(), object).handle((response, ex) -> {
+            if (ex != null) {
+                log.error("Failed to create poll on twitch.tv", ex);
                 return false;
             } else if (!response.isSuccessful()) {
-                log.error("Failed to create poll on twitch.tv - {}", body.string());
+                log.error("Failed to create poll on twitch.tv - {}", response.body());
                 return false;
             }
-            JSONObject json = new JSONObject(body.string());
-            if (!json.has("data")) {
-                return false;
-            }
-            JSONArray data = json.getJSONArray("data");
+            List<JSONObject> data = response.data();
             if (data.isEmpty()) {
                 return false;
             }
-            JSONObject item = data.getJSONObject(0);
-            this.registered.put(item.getString("id"), poll);
-        } catch (Exception ex) {
-            log.error("Failed to create poll on twitch.tv", ex);
-            return false;
-        }
-        return true;
+            this.registered.put(data.getFirst().getString("id"), poll);
+            return true;
+        });
     }
 
 }
@@ -7,28 +7,45 @@ import net.notfab.ttvsi.client.models.twitch.TwitchRewardEvent;
 import net.notfab.ttvsi.client.network.NetworkAPI;
 import net.notfab.ttvsi.common.rewards.Reward;
 import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import net.notfab.ttvsi.common.rewards.client.ClientRequestRewardSyncEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardDeltaEvent;
 import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
-import okhttp3.*;
-import org.jetbrains.annotations.NotNull;
-import org.json.JSONArray;
-import org.json.JSONObject;
+import net.notfab.ttvsi.common.trace.TraceContext;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Slf4j
 @Service
 public class TwitchRewardManager {
 
     private final TwitchAPI api;
-    private final Map<String, Reward> registered = new HashMap<>();
-    private final Set<String> cache = new HashSet<>();
+    private final RewardReconciler reconciler;
+    // <twitch id, reward>, read by redeems while changes are being applied
+    private final Map<String, Reward> registered = new ConcurrentHashMap<>();
+    // <reward id, twitch id>
+    private final Map<String, String> twitchIds = new ConcurrentHashMap<>();
+    private final Set<String> cache = ConcurrentHashMap.newKeySet();
     private final NetworkAPI network;
+    private final TraceMetrics traces;
 
-    public TwitchRewardManager(TwitchAPI api, NetworkAPI network) {
+    // Rewards the room has, snapshot plus deltas, whether or not they made it to twitch. Only touched by queued changes
+    private final Map<String, Reward> desired = new LinkedHashMap<>();
+    // Room reward version fully applied to twitch, -1 until the first snapshot. Only touched by queued changes
+    private long version = -1;
+    // Tail of the reward changes being applied
+    private CompletableFuture<Void> queue = CompletableFuture.completedFuture(null);
+
+    public TwitchRewardManager(TwitchAPI api, RewardReconciler reconciler, NetworkAPI network, TraceMetrics traces) {
         this.api = api;
+        this.reconciler = reconciler;
         this.network = network;
+        this.traces = traces;
     }
 
     @EventListener
@@ -36,7 +53,7 @@ public class TwitchRewardManager {
         if (!api.getDestructive().get()) {
             return;
         }
-        this.onRewardSync(new RewardSyncEvent(new ArrayList<>()));
+        this.onRewardSync(new RewardSyncEvent(new ArrayList<>(), -1));
     }
 
     /**
@@ -44,29 +61,87 @@ public class TwitchRewardManager {
      */
     @EventListener
     public void onRewardSync(RewardSyncEvent event) {
-        // <title, id>
-        Map<String, String> active = this.fetchActiveRewards();
-        if (active.isEmpty()) {
-            log.info("No rewards are registered on twitch");
-        }
-        Set<String> registered = new HashSet<>();
-        for (Reward reward : event.rewards()) {
-            String twitch = active.get(reward.getTitle());
-            if (twitch == null) {
-                twitch = this.create(reward);
+        this.enqueue(() -> this.sync(event));
+    }
+
+    /**
+     * Server sent a single reward change, apply only that change on twitch
+     */
+    @EventListener
+    public void onRewardDelta(RewardDeltaEvent event) {
+        this.enqueue(() -> this.applyDelta(event));
+    }
+
+    /**
+     * Reward changes run one after another in the order the server sent them, without blocking the caller
+     */
+    private synchronized void enqueue(Supplier<CompletableFuture<Void>> task) {
+        this.queue = this.queue.thenCompose(ignored -> task.get())
+                .exceptionally(ex -> {
+                    log.error("Failed to apply reward changes", ex);
+                    return null;
+                });
+    }
+
+    private CompletableFuture<Void> sync(RewardSyncEvent event) {
+        this.desired.clear();
+        event.rewards().forEach(reward -> this.desired.put(reward.getId(), reward));
+        return this.apply().thenAccept(complete -> {
+            log.info("Registered {} of {} rewards on twitch", this.registered.size(), this.desired.size());
+            if (complete) {
+                this.version = event.version();
+            }
+        });
+    }
+
+    private CompletableFuture<Void> applyDelta(RewardDeltaEvent event) {
+        if (event.version() <= this.version) {
+            return CompletableFuture.completedFuture(null);
+        } else if (this.version < 0 || event.version() != this.version + 1) {
+            log.info("Missed reward changes ({} -> {}), requesting full sync", this.version, event.version());
+            TwitchProfile profile = api.getProfile();
+            if (profile != null) {
+                this.network.publish(new ClientRequestRewardSyncEvent(profile.getChannelName()));
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        event.removed().forEach(this.desired::remove);
+        event.upserted().forEach(reward -> this.desired.put(reward.getId(), reward));
+        return this.apply().thenAccept(complete -> {
+            if (complete) {
+                this.version = event.version();
+                log.info("Applied reward changes (version {})", this.version);
+            } else {
+                log.warn("Reward changes for version {} were not fully applied, the next change requests a full sync",
+                        event.version());
+            }
+        });
+    }
+
+    /**
+     * Reconcile twitch with the desired rewards, then track the ones that made it there
+     *
+     * @return false if any change failed, twitch may not match the desired rewards
+     */
+    private CompletableFuture<Boolean> apply() {
+        List<Reward> rewards = List.copyOf(this.desired.values());
+        return this.reconciler.reconcile(rewards, Map.copyOf(this.twitchIds)).thenApply(applied -> {
+            Map<String, Reward> registered = new HashMap<>();
+            for (Reward reward : rewards) {
+                String twitch = applied.get(reward.getId());
                 if (twitch == null) {
                     log.warn("Reward {} failed to register due to error", reward.getId());
                     continue;
                 }
+                registered.put(twitch, reward);
             }
-            this.registered.put(twitch, reward);
-            registered.add(twitch);
-        }
-        log.info("Registered {} rewards on twitch", registered.size());
-        active.values().stream()
-                .filter(broken -> !registered.contains(broken))
-                .forEach(this::delete);
-        log.info("Removed {} rewards from twitch", active.size() - registered.size());
+            // Swapped in place, redeems keep resolving rewards that did not change
+            this.registered.keySet().retainAll(registered.keySet());
+            this.registered.putAll(registered);
+            this.twitchIds.keySet().retainAll(applied.keySet());
+            this.twitchIds.putAll(applied);
+            return registered.size() == rewards.size() && !this.reconciler.isStale();
+        });
     }
 
     /**
@@ -91,150 +166,10 @@ public class TwitchRewardManager {
         if (event.input() != null && !event.input().isBlank()) {
             redeem.setInput(event.input());
         }
+        redeem.setTrace(TraceContext.start(event.redeemed()));
+        this.traces.hop(redeem, TraceMetrics.CLIENT_RECEIVED);
         this.network.publish(redeem);
         log.info("Reward {} was redeemed by {}", reward.getId(), redeem.getUserId());
     }
 
-    /**
-     * Deletes a custom reward from twitch
-     */
-    private void delete(String reward) {
-        TwitchProfile profile = api.getProfile();
-        if (profile == null) {
-            return;
-        } else if (!api.getDestructive().get()) {
-            log.info("Skipped deleting reward ({}) because destructive actions are disabled", reward);
-            return;
-        }
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse("https://api.twitch.tv/helix/channel_points/custom_rewards"))
-                .newBuilder()
-                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
-                .addQueryParameter("id", reward)
-                .build();
-        Request request = new Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .header("Content-Type", "application/json")
-                .delete().build();
-        try (Response response = this.api.getHttp().newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                log.error("Failed to delete reward from twitch (code {})", response.code());
-            }
-        } catch (Exception ex) {
-            log.error("Failed to delete reward from twitch", ex);
-        }
-    }
-
-    /**
-     * Fetches all active rewards on twitch, returning a map of title, id.
-     */
-    private @NotNull Map<String, String> fetchActiveRewards() {
-        TwitchProfile profile = api.getProfile();
-        if (profile == null) {
-            return new HashMap<>();
-        }
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse("https://api.twitch.tv/helix/channel_points/custom_rewards"))
-                .newBuilder()
-                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
-                .addQueryParameter("only_manageable_rewards", "true")
-                .build();
-        Request request = new Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .header("Content-Type", "application/json")
-                .get().build();
-        try (Response response = this.api.getHttp().newCall(request).execute(); ResponseBody body = response.body()) {
-            if (body == null) {
-                return new HashMap<>();
-            } else if (!response.isSuccessful()) {
-                log.error("Failed to fetch active rewards: {}", body.string());
-                return new HashMap<>();
-            }
-            JSONObject twitch = new JSONObject(body.string());
-            if (!twitch.has("data")) {
-                JSONArray data = twitch.getJSONArray("data");
-                if (data.isEmpty()) {
-                    return new HashMap<>();
-                }
-                Map<String, String> registered = new HashMap<>();
-                for (int i = 0; i < data.length(); i++) {
-                    JSONObject item = data.getJSONObject(i);
-                    registered.put(item.getString("title"), item.getString("id"));
-                }
-                return registered;
-            }
-        } catch (Exception ex) {
-            log.error("Failed to fetch rewards from twitch", ex);
-            return new HashMap<>();
-        }
-        return new HashMap<>();
-    }
-
-    /**
-     * Registers a custom channel point reward on twitch
-     */
-    private String create(Reward reward) {
-        TwitchProfile profile = api.getProfile();
-        if (profile == null) {
-            return null;
-        }
-        JSONObject object = new JSONObject();
-        object.put("title", reward.getTitle());
-        object.put("cost", reward.getCost());
-        object.put("should_redemptions_skip_request_queue", true);
-        if (reward.getPrompt() != null && !reward.getPrompt().isBlank()) {
-            object.put("is_user_input_required", true);
-            object.put("prompt", reward.getPrompt());
-        }
-        if (reward.getColor() != null) {
-            object.put("background_color", reward.getColor());
-        }
-        if (reward.getLimitPerStream() != null && reward.getLimitPerStream() > 0) {
-            object.put("is_max_per_stream_enabled", true);
-            object.put("max_per_stream", reward.getLimitPerStream());
-        }
-        if (reward.getLimitPerUser() != null && reward.getLimitPerUser() > 0) {
-            object.put("is_max_per_user_per_stream_enabled", true);
-            object.put("max_per_user_per_stream", reward.getLimitPerUser());
-        }
-        if (reward.getCooldown() != null && reward.getCooldown() > 1) {
-            object.put("is_global_cooldown_enabled", true);
-            object.put("global_cooldown_seconds", reward.getCooldown());
-        }
-        HttpUrl url = Objects.requireNonNull(HttpUrl.parse("https://api.twitch.tv/helix/channel_points/custom_rewards"))
-                .newBuilder()
-                .addQueryParameter("broadcaster_id", profile.getBroadcasterId())
-                .build();
-        Request request = new Request.Builder()
-                .url(url)
-                .header("Authorization", "Bearer " + profile.getAccessToken())
-                .header("Client-Id", TwitchAPI.TWITCH_APP_CLIENT_ID)
-                .header("Content-Type", "application/json")
-                .post(RequestBody.create(object.toString(), MediaType.parse("application/json")))
-                .build();
-        try (Response response = this.api.getHttp().newCall(request).execute(); ResponseBody body = response.body()) {
-            if (body == null) {
-                return null;
-            } else if (!response.isSuccessful()) {
-                log.error("Failed to register reward: {}", body.string());
-                return null;
-            }
-            JSONObject created = new JSONObject(body.string());
-            if (!created.has("data")) {
-                JSONArray data = created.getJSONArray("data");
-                if (data.isEmpty()) {
-                    return null;
-                }
-                JSONObject returned = data.getJSONObject(0);
-                return returned.getString("id");
-            }
-        } catch (Exception ex) {
-            log.error("Failed to create reward on twitch.tv", ex);
-            return null;
-        }
-        return null;
-    }
-
 }
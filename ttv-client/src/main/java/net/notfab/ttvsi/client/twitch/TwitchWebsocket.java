@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import net.notfab.ttvsi.client.models.SocketState;
 import net.notfab.ttvsi.client.models.events.TwitchEstablishedEvent;
+import net.notfab.ttvsi.client.models.events.TwitchReconnectEvent;
 import net.notfab.ttvsi.client.models.events.TwitchWsStateEvent;
 import net.notfab.ttvsi.client.models.twitch.TwitchPollFinishedEvent;
 import net.notfab.ttvsi.client.models.twitch.TwitchPollProgressedEvent;
@@ -16,6 +17,8 @@ import org.springframework.context.ApplicationEventPublisher;
 
 import java.net.ConnectException;
 import java.net.URI;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Executors;
@@ -29,28 +32,57 @@ public class TwitchWebsocket extends WebSocketClient {
     private final ApplicationEventPublisher publisher;
     private final AtomicReference<String> id = new AtomicReference<>();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    // Where to start a new session after losing this one
+    private final URI base;
+    // The next welcome resumes an existing session instead of starting a new one
+    private volatile boolean resuming;
+    // Twitch asked to move, a replacement connection takes over and this one must not reconnect
+    private volatile boolean moving = false;
 
     @Getter
     private SocketState state;
 
-    public TwitchWebsocket(ApplicationEventPublisher publisher) {
-        super(URI.create("wss://eventsub.wss.twitch.tv/ws"));
+    public TwitchWebsocket(URI uri, ApplicationEventPublisher publisher) {
+        this(uri, uri, false, publisher);
+    }
+
+    /**
+     * Connection resuming a session at the reconnect url twitch sent, new sessions start at the base url
+     */
+    public TwitchWebsocket(URI reconnectUrl, URI base, ApplicationEventPublisher publisher) {
+        this(reconnectUrl, base, true, publisher);
+    }
+
+    private TwitchWebsocket(URI uri, URI base, boolean resuming, ApplicationEventPublisher publisher) {
+        super(uri);
+        this.base = base;
+        this.resuming = resuming;
         this.publisher = publisher;
         this.setConnectionLostTimeout(15);
         this.state = SocketState.DISCONNECTED;
-        this.publisher.publishEvent(new TwitchWsStateEvent(this.state));
+        if (!resuming) {
+            this.publisher.publishEvent(new TwitchWsStateEvent(this.state));
+        }
     }
 
     /**
      * Terminates a connection and any reconnection attempts
      */
     public void terminate() {
-        this.scheduler.shutdownNow();
-        this.close();
+        this.retire();
         this.state = SocketState.DISCONNECTED;
         this.publisher.publishEvent(new TwitchWsStateEvent(this.state));
     }
 
+    /**
+     * Close a connection replaced by another one, without reconnecting or reporting a state change
+     */
+    public void retire() {
+        this.moving = true;
+        this.scheduler.shutdownNow();
+        this.close();
+    }
+
     @Override
     public void onOpen(ServerHandshake data) {
         log.info("Websocket connection opened");
@@ -70,17 +102,31 @@ public class TwitchWebsocket extends WebSocketClient {
                 return;
             }
             this.id.set(session);
-            log.info("Twitch websocket established ({})", session);
-            this.publisher.publishEvent(new TwitchEstablishedEvent(session));
+            boolean resumed = this.resuming;
+            this.resuming = false;
+            log.info("Twitch websocket {} ({})", resumed ? "resumed" : "established", session);
+            this.publisher.publishEvent(new TwitchEstablishedEvent(session, resumed));
             return;
         } else if ("session_keepalive".equals(type)) {
             // Keepalive means connection is healthy
             return;
-        } else if (!object.has("event") || type == null) {
+        } else if ("session_reconnect".equals(type)) {
+            // Twitch is moving the session, this connection keeps delivering until the new one is welcomed
+            String url = this.getReconnectUrl(object);
+            if (url == null) {
+                log.warn("Twitch requested a reconnect without a url: {}", message);
+                return;
+            }
+            log.info("Twitch requested a reconnect");
+            this.moving = true;
+            this.publisher.publishEvent(new TwitchReconnectEvent(URI.create(url)));
+            return;
+        }
+        JSONObject event = this.getEvent(object);
+        if (event == null || type == null) {
             log.warn("Weird twitch event received: {}", message);
             return;
         }
-        JSONObject event = object.getJSONObject("event");
         if ("channel.poll.progress".equalsIgnoreCase(type)) {
             Map<String, Integer> votes = this.getPollVotes(event);
             this.publisher.publishEvent(new TwitchPollProgressedEvent(event.getString("id"), votes));
@@ -94,9 +140,22 @@ public class TwitchWebsocket extends WebSocketClient {
             // id = redemption id
             // reward = object
             // reward.id = reward identifier
+            // redeemed_at = RFC3339 timestamp
             JSONObject reward = event.getJSONObject("reward");
             this.publisher.publishEvent(new TwitchRewardEvent(event.getString("id"), reward.getString("id"),
-                    event.getString("user_login"), event.getString("user_name"), event.optString("user_input")));
+                    event.getString("user_login"), event.getString("user_name"), event.optString("user_input"),
+                    this.getTimestamp(event.optString("redeemed_at"))));
+        }
+    }
+
+    private long getTimestamp(String timestamp) {
+        if (timestamp == null || timestamp.isBlank()) {
+            return System.currentTimeMillis();
+        }
+        try {
+            return Instant.parse(timestamp).toEpochMilli();
+        } catch (DateTimeParseException ex) {
+            return System.currentTimeMillis();
         }
     }
 
@@ -120,6 +179,9 @@ public class TwitchWebsocket extends WebSocketClient {
             JSONObject metadata = object.getJSONObject("metadata");
             if (metadata == null) {
                 return null;
+            } else if (metadata.has("subscription_type")) {
+                // Notifications carry the subscription type next to message_type=notification
+                return metadata.getString("subscription_type");
             } else if (!metadata.has("message_type")) {
                 return null;
             }
@@ -136,6 +198,20 @@ public class TwitchWebsocket extends WebSocketClient {
         return null;
     }
 
+    /**
+     * Event body, either at the top level or inside the payload of a notification
+     */
+    private JSONObject getEvent(JSONObject object) {
+        if (object.has("event")) {
+            return object.optJSONObject("event");
+        }
+        JSONObject payload = object.optJSONObject("payload");
+        if (payload == null) {
+            return null;
+        }
+        return payload.optJSONObject("event");
+    }
+
     private String getWelcomeId(JSONObject object) {
         JSONObject metadata = object.getJSONObject("metadata");
         if (metadata == null) {
@@ -160,11 +236,28 @@ public class TwitchWebsocket extends WebSocketClient {
         return session.getString("id");
     }
 
+    private String getReconnectUrl(JSONObject object) {
+        JSONObject payload = object.optJSONObject("payload");
+        JSONObject session = payload == null ? null : payload.optJSONObject("session");
+        if (session == null) {
+            return null;
+        }
+        String url = session.optString("reconnect_url", null);
+        return url == null || url.isBlank() ? null : url;
+    }
+
     @Override
     public void onClose(int code, String reason, boolean remote) {
-        log.warn("Disconnected from twitch ({} - {})", code, remote);
         this.id.set(null);
+        this.resuming = false;
+        if (this.moving) {
+            log.info("Closed previous twitch connection ({})", code);
+            return;
+        }
+        log.warn("Disconnected from twitch ({} - {})", code, remote);
         if (remote) {
+            // The session is gone, start a new one
+            this.uri = this.base;
             this.state = SocketState.CONNECTING;
             this.scheduler.schedule(this::reconnect, 5, TimeUnit.SECONDS);
             this.publisher.publishEvent(new TwitchWsStateEvent(this.state));
@@ -177,8 +270,14 @@ public class TwitchWebsocket extends WebSocketClient {
     @Override
     public void onError(Exception exception) {
         this.id.set(null);
+        this.resuming = false;
+        if (this.moving) {
+            log.warn("Previous twitch connection failed", exception);
+            return;
+        }
         if (exception instanceof ConnectException) {
             log.error("Twitch socket error (Reconnecting)", exception);
+            this.uri = this.base;
             this.state = SocketState.CONNECTING;
             this.scheduler.schedule(this::reconnect, 5, TimeUnit.SECONDS);
         } else {
@@ -13,6 +13,7 @@ import net.notfab.ttvsi.client.twitch.TwitchAPI;
 import net.notfab.ttvsi.client.twitch.TwitchOAuthManager;
 import net.notfab.ttvsi.common.protocol.RoomMemberSyncEvent;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 
@@ -24,8 +25,12 @@ import java.net.URI;
 import java.util.HashSet;
 import java.util.UUID;
 
+/**
+ * Desktop window of the client, left out with {@code ttv.ui.enabled=false} to run headless
+ */
 @Slf4j
 @Component
+@ConditionalOnProperty(value = "ttv.ui.enabled", havingValue = "true", matchIfMissing = true)
 public class UiHandler {
 
     private static final Color COLOR_RED = new Color(204, 53, 61);
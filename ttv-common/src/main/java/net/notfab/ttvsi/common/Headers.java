@@ -6,5 +6,8 @@ public class Headers {
     public static final String X_TWITCH_ID = "X-TwitchId";
     public static final String X_ROOM_ID = "X-RoomId";
     public static final String X_CREDENTIALS = "X-Credentials";
+    public static final String X_LAST_SEQUENCE = "X-LastSequence";
+    public static final String X_LAST_EPOCH = "X-LastEpoch";
+    public static final String X_ENCODING = "X-Encoding";
 
 }
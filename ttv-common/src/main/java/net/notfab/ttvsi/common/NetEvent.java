@@ -8,8 +8,10 @@ public enum NetEvent {
     CLIENT_CREATE_REWARD,
     CLIENT_DELETE_REWARD,
     CLIENT_UPDATE_REWARDS,
+    CLIENT_REQUEST_REWARD_SYNC,
 
     SERVER_REWARD_SYNC,
+    SERVER_REWARD_DELTA,
     SERVER_ROOM_MEMBERS_SYNC,
     SERVER_POLL_FINISHED,
     SERVER_POLL_CREATE,
@@ -12,7 +12,9 @@ import net.notfab.ttvsi.common.protocol.RoomMemberSyncEvent;
 import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
 import net.notfab.ttvsi.common.rewards.client.ClientCreateRewardEvent;
 import net.notfab.ttvsi.common.rewards.client.ClientDeleteRewardEvent;
+import net.notfab.ttvsi.common.rewards.client.ClientRequestRewardSyncEvent;
 import net.notfab.ttvsi.common.rewards.client.ClientUpdateRewardsEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardDeltaEvent;
 import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
 
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type", include = JsonTypeInfo.As.EXISTING_PROPERTY)
@@ -23,8 +25,10 @@ import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
         @JsonSubTypes.Type(value = ClientCreateRewardEvent.class, name = "CLIENT_CREATE_REWARD"),
         @JsonSubTypes.Type(value = ClientDeleteRewardEvent.class, name = "CLIENT_DELETE_REWARD"),
         @JsonSubTypes.Type(value = ClientUpdateRewardsEvent.class, name = "CLIENT_UPDATE_REWARDS"),
+        @JsonSubTypes.Type(value = ClientRequestRewardSyncEvent.class, name = "CLIENT_REQUEST_REWARD_SYNC"),
 
         @JsonSubTypes.Type(value = RewardSyncEvent.class, name = "SERVER_REWARD_SYNC"),
+        @JsonSubTypes.Type(value = RewardDeltaEvent.class, name = "SERVER_REWARD_DELTA"),
         @JsonSubTypes.Type(value = RoomMemberSyncEvent.class, name = "SERVER_ROOM_MEMBERS_SYNC"),
         @JsonSubTypes.Type(value = ServerPollFinishedEvent.class, name = "SERVER_POLL_FINISHED"),
         @JsonSubTypes.Type(value = ServerCreatePollEvent.class, name = "SERVER_POLL_CREATE"),
@@ -34,6 +38,17 @@ import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
 })
 public interface NetworkEvent {
 
+    /**
+     * Property added by the server to room broadcasts, holding the room sequence number
+     */
+    String SEQUENCE = "seq";
+
+    /**
+     * Property added by the server next to {@link #SEQUENCE}, identifying the room log that assigned it.
+     * Sequences from different epochs can't be compared.
+     */
+    String EPOCH = "epoch";
+
     NetEvent getType();
 
 }
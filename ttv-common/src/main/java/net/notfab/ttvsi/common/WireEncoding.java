@@ -0,0 +1,49 @@
+package net.notfab.ttvsi.common;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+/**
+ * Encoding of {@link NetworkEvent}s on the wire, negotiated with the {@link Headers#X_ENCODING} header.
+ * Clients request an encoding during the handshake and the server echoes the one it accepted,
+ * anything else falls back to JSON text frames.
+ */
+public enum WireEncoding {
+
+    /**
+     * JSON in text frames
+     */
+    JSON,
+
+    /**
+     * CBOR in binary frames, same structure as JSON
+     */
+    CBOR;
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    public ObjectMapper createMapper() {
+        return switch (this) {
+            case JSON -> new ObjectMapper();
+            case CBOR -> new ObjectMapper(new CBORFactory());
+        };
+    }
+
+    /**
+     * Parse a header value, unknown or missing values fall back to JSON
+     */
+    public static WireEncoding fromHeader(String value) {
+        if (value == null) {
+            return JSON;
+        }
+        for (WireEncoding encoding : values()) {
+            if (encoding.name().equalsIgnoreCase(value.trim())) {
+                return encoding;
+            }
+        }
+        return JSON;
+    }
+
+}
@@ -1,13 +1,16 @@
 package net.notfab.ttvsi.common.rewards;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import net.notfab.ttvsi.common.NetEvent;
 import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.trace.TraceContext;
+import net.notfab.ttvsi.common.trace.Traced;
 
 @Data
 @JsonIgnoreProperties(ignoreUnknown = true)
-public class RewardRedeemEvent implements NetworkEvent {
+public class RewardRedeemEvent implements NetworkEvent, Traced {
 
     private String id;
     private String reward;
@@ -15,6 +18,8 @@ public class RewardRedeemEvent implements NetworkEvent {
     private String channel;
     private String userName;
     private String input;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private TraceContext trace;
 
     @Override
     public NetEvent getType() {
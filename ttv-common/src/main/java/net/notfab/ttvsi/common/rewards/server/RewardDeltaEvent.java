@@ -0,0 +1,22 @@
+package net.notfab.ttvsi.common.rewards.server;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import net.notfab.ttvsi.common.NetEvent;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.rewards.Reward;
+
+import java.util.List;
+
+/**
+ * Incremental change to a room's rewards, moving it from {@code version - 1} to {@code version}.
+ * Clients that are not at the previous version request a full {@link RewardSyncEvent} instead.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record RewardDeltaEvent(long version, List<Reward> upserted, List<String> removed) implements NetworkEvent {
+
+    @Override
+    public NetEvent getType() {
+        return NetEvent.SERVER_REWARD_DELTA;
+    }
+
+}
@@ -7,8 +7,11 @@ import net.notfab.ttvsi.common.rewards.Reward;
 
 import java.util.List;
 
+/**
+ * Full snapshot of a room's rewards at a version
+ */
 @JsonIgnoreProperties(ignoreUnknown = true)
-public record RewardSyncEvent(List<Reward> rewards) implements NetworkEvent {
+public record RewardSyncEvent(List<Reward> rewards, long version) implements NetworkEvent {
 
     @Override
     public NetEvent getType() {
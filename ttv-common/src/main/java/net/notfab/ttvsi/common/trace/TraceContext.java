@@ -0,0 +1,41 @@
+package net.notfab.ttvsi.common.trace;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Timing data carried along with an event from where it originated to every place it was delivered.
+ * Timestamps are wall clock millis from different machines, so per-hop durations include clock skew.
+ *
+ * @param id     identifier shared by every copy of the event
+ * @param origin epoch millis at which the event happened
+ * @param hops   places the event went through, in order
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record TraceContext(String id, long origin, List<TraceHop> hops) {
+
+    public static TraceContext start(long origin) {
+        return new TraceContext(UUID.randomUUID().toString(), origin, List.of());
+    }
+
+    /**
+     * Copy of this context with one more hop
+     */
+    public TraceContext with(TraceHop hop) {
+        List<TraceHop> hops = new ArrayList<>(this.hops.size() + 1);
+        hops.addAll(this.hops);
+        hops.add(hop);
+        return new TraceContext(this.id, this.origin, List.copyOf(hops));
+    }
+
+    /**
+     * Epoch millis of the latest hop, or the origin if there are none yet
+     */
+    public long latest() {
+        return this.hops.isEmpty() ? this.origin : this.hops.getLast().at();
+    }
+
+}
@@ -0,0 +1,8 @@
+package net.notfab.ttvsi.common.trace;
+
+/**
+ * @param name where the event was seen
+ * @param at   epoch millis
+ */
+public record TraceHop(String name, long at) {
+}
@@ -0,0 +1,79 @@
+package net.notfab.ttvsi.common.trace;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records traced events as they go through each hop.
+ * Two timers are kept per hop, time since the previous hop ({@code ttv.trace.hop}) and time since the origin
+ * ({@code ttv.trace.latency}), both with percentile histograms.
+ * <p>
+ * Micrometer is not a dependency of this jar, only applications that provide it may load this class.
+ */
+public class TraceMetrics {
+
+    public static final String CLIENT_RECEIVED = "client.received";
+    public static final String CLIENT_SENT = "client.sent";
+    public static final String SERVER_RECEIVED = "server.received";
+    public static final String SERVER_BROADCAST = "server.broadcast";
+    public static final String CLIENT_DELIVERED = "client.delivered";
+    public static final String OVERLAY_SSE = "overlay.sse";
+    public static final String OVERLAY_WEBSOCKET = "overlay.websocket";
+
+    private final MeterRegistry registry;
+    private final Map<String, Timer[]> timers = new ConcurrentHashMap<>();
+
+    public TraceMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Add a hop to the event's trace and record it, events without a trace are ignored
+     */
+    public void hop(Traced event, String name) {
+        TraceContext trace = event.getTrace();
+        if (trace == null) {
+            return;
+        }
+        TraceHop hop = new TraceHop(name, System.currentTimeMillis());
+        this.record(trace, hop);
+        event.setTrace(trace.with(hop));
+    }
+
+    /**
+     * Record a final hop without changing the event, for places that deliver the same event more than once
+     */
+    public void record(Traced event, String name) {
+        TraceContext trace = event.getTrace();
+        if (trace != null) {
+            this.record(trace, new TraceHop(name, System.currentTimeMillis()));
+        }
+    }
+
+    private void record(TraceContext trace, TraceHop hop) {
+        Timer[] timers = this.timers.computeIfAbsent(hop.name(), this::create);
+        // Clocks of different machines may disagree, never record negative time
+        timers[0].record(Duration.ofMillis(Math.max(0, hop.at() - trace.latest())));
+        timers[1].record(Duration.ofMillis(Math.max(0, hop.at() - trace.origin())));
+    }
+
+    private Timer[] create(String hop) {
+        return new Timer[]{
+                Timer.builder("ttv.trace.hop")
+                        .description("Time from the previous hop of a traced event")
+                        .tag("hop", hop)
+                        .publishPercentileHistogram()
+                        .register(this.registry),
+                Timer.builder("ttv.trace.latency")
+                        .description("Time from the origin of a traced event")
+                        .tag("hop", hop)
+                        .publishPercentileHistogram()
+                        .register(this.registry)
+        };
+    }
+
+}
@@ -0,0 +1,15 @@
+package net.notfab.ttvsi.common.trace;
+
+/**
+ * An event that may carry a {@link TraceContext}
+ */
+public interface Traced {
+
+    /**
+     * The trace of this event, null if it is not traced
+     */
+    TraceContext getTrace();
+
+    void setTrace(TraceContext trace);
+
+}
@@ -0,0 +1,52 @@
+package net.notfab.ttvsi.loadtest;
+
+import net.notfab.ttvsi.common.WireEncoding;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shape of a load test run, parsed from {@code --name=value} arguments.
+ *
+ * @param clients           simulated clients, spread evenly across rooms
+ * @param rooms             rooms the clients join
+ * @param duration          how long polls and redeem bursts are driven for
+ * @param progressInterval  how often every client reports poll progress
+ * @param burstInterval     how often every room receives a burst of redeems
+ * @param burstSize         redeems per burst
+ * @param reconnectFraction share of clients dropped and reconnected halfway through the run
+ * @param encoding          wire encoding requested by every client
+ */
+public record LoadOptions(int clients, int rooms, Duration duration, Duration progressInterval,
+                          Duration burstInterval, int burstSize, double reconnectFraction, WireEncoding encoding) {
+
+    public static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, split), arg.substring(split + 1));
+            }
+        }
+        LoadOptions options = new LoadOptions(
+                Integer.parseInt(values.getOrDefault("clients", "200")),
+                Integer.parseInt(values.getOrDefault("rooms", "20")),
+                Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "60"))),
+                Duration.ofMillis(Long.parseLong(values.getOrDefault("progress-interval", "500"))),
+                Duration.ofMillis(Long.parseLong(values.getOrDefault("burst-interval", "5000"))),
+                Integer.parseInt(values.getOrDefault("burst-size", "20")),
+                Double.parseDouble(values.getOrDefault("reconnect-fraction", "0.1")),
+                WireEncoding.fromHeader(values.getOrDefault("encoding", "JSON")));
+        if (options.clients() < 1 || options.rooms() < 1 || options.rooms() > options.clients()) {
+            throw new IllegalArgumentException("Need at least one client per room");
+        }
+        return options;
+    }
+
+}
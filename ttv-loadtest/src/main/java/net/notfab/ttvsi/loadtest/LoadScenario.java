@@ -0,0 +1,187 @@
+package net.notfab.ttvsi.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.polls.Choice;
+import net.notfab.ttvsi.common.polls.Poll;
+import net.notfab.ttvsi.common.polls.client.ClientPollFinishedEvent;
+import net.notfab.ttvsi.common.polls.client.ClientPollProgressEvent;
+import net.notfab.ttvsi.common.polls.client.ClientRequestedPollCreateEvent;
+import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import net.notfab.ttvsi.common.trace.TraceContext;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Scripted session: every client joins, each room runs one poll that every client reports progress for,
+ * rooms get periodic redeem bursts and part of the clients reconnect halfway through.
+ */
+@Slf4j
+public class LoadScenario {
+
+    private static final List<String> CHOICES = List.of("red", "green", "blue");
+
+    private final LoadOptions options;
+    private final URI uri;
+    private final LoadStats stats;
+    private final Map<String, List<SimulatedClient>> rooms = new LinkedHashMap<>();
+    private final Map<String, String> polls = new HashMap<>();
+
+    public LoadScenario(LoadOptions options, URI uri, LoadStats stats) {
+        this.options = options;
+        this.uri = uri;
+        this.stats = stats;
+    }
+
+    public void run() throws InterruptedException {
+        this.connect();
+        this.createPolls();
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        long progress = this.options.progressInterval().toMillis();
+        long burst = this.options.burstInterval().toMillis();
+        scheduler.scheduleAtFixedRate(this::sendProgress, progress, progress, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this::sendBursts, burst, burst, TimeUnit.MILLISECONDS);
+        scheduler.schedule(this::reconnect, this.options.duration().toMillis() / 2, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(this.stats::sampleHeap, 0, 1, TimeUnit.SECONDS);
+
+        Thread.sleep(this.options.duration().toMillis());
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(10, TimeUnit.SECONDS);
+
+        this.finishPolls();
+    }
+
+    /**
+     * Disconnect every client
+     */
+    public void close() throws InterruptedException {
+        for (List<SimulatedClient> clients : this.rooms.values()) {
+            for (SimulatedClient client : clients) {
+                client.closeBlocking();
+            }
+        }
+    }
+
+    private void connect() throws InterruptedException {
+        for (int i = 0; i < this.options.clients(); i++) {
+            String room = "room-" + (i % this.options.rooms());
+            WsCredentials credentials = new WsCredentials(UUID.randomUUID(), "user-" + i, room);
+            this.rooms.computeIfAbsent(room, k -> new ArrayList<>())
+                    .add(new SimulatedClient(this.uri, credentials, this.options.encoding(), this.stats));
+        }
+        try (ExecutorService connector = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<SimulatedClient> clients : this.rooms.values()) {
+                for (SimulatedClient client : clients) {
+                    connector.execute(() -> {
+                        long start = System.nanoTime();
+                        try {
+                            if (client.connectBlocking(10, TimeUnit.SECONDS)) {
+                                this.stats.onConnected(System.nanoTime() - start);
+                            } else {
+                                log.warn("Client {} failed to connect", client.getCredentials().twitchId());
+                            }
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    });
+                }
+            }
+        }
+        log.info("Connected {} clients to {} rooms", this.options.clients(), this.rooms.size());
+    }
+
+    private void createPolls() throws InterruptedException {
+        for (Map.Entry<String, List<SimulatedClient>> entry : this.rooms.entrySet()) {
+            Poll poll = new Poll();
+            poll.setId(UUID.randomUUID().toString());
+            poll.setTitle("Load test " + entry.getKey());
+            // Outlives the run, polls are finished explicitly by every client
+            poll.setDuration((int) this.options.duration().toSeconds() + 60);
+            poll.setChoices(CHOICES.stream().map(id -> {
+                Choice choice = new Choice();
+                choice.setId(id);
+                choice.setTitle(id);
+                return choice;
+            }).toList());
+            SimulatedClient creator = entry.getValue().getFirst();
+            creator.emit(new ClientRequestedPollCreateEvent(poll, creator.getCredentials().twitchId()));
+            this.polls.put(entry.getKey(), poll.getId());
+        }
+        // Progress sent before the poll is running is ignored by the server
+        Thread.sleep(500);
+    }
+
+    private void sendProgress() {
+        this.rooms.forEach((room, clients) -> {
+            String poll = this.polls.get(room);
+            for (SimulatedClient client : clients) {
+                client.emit(new ClientPollProgressEvent(poll, client.getCredentials().twitchId(), this.votes()));
+            }
+        });
+    }
+
+    private void sendBursts() {
+        this.rooms.forEach((room, clients) -> {
+            SimulatedClient sender = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+            for (int i = 0; i < this.options.burstSize(); i++) {
+                RewardRedeemEvent redeem = new RewardRedeemEvent();
+                redeem.setId(UUID.randomUUID().toString());
+                redeem.setReward("load-test");
+                redeem.setUserId(String.valueOf(i));
+                redeem.setChannel(sender.getCredentials().twitchId());
+                redeem.setUserName("viewer-" + i);
+                redeem.setTrace(TraceContext.start(System.currentTimeMillis()));
+                this.stats.onRedeemSent(redeem.getId(), clients.size());
+                if (!sender.emit(redeem)) {
+                    break;
+                }
+            }
+        });
+    }
+
+    private void reconnect() {
+        List<SimulatedClient> all = new ArrayList<>();
+        this.rooms.values().forEach(all::addAll);
+        Collections.shuffle(all);
+        int count = (int) Math.round(all.size() * this.options.reconnectFraction());
+        if (count == 0) {
+            return;
+        }
+        log.info("Reconnecting {} clients", count);
+        try (ExecutorService reconnector = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (SimulatedClient client : all.subList(0, count)) {
+                reconnector.execute(() -> {
+                    try {
+                        client.bounce();
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+        }
+    }
+
+    private void finishPolls() throws InterruptedException {
+        this.rooms.forEach((room, clients) -> {
+            String poll = this.polls.get(room);
+            for (SimulatedClient client : clients) {
+                client.emit(new ClientPollFinishedEvent(poll, client.getCredentials().twitchId(), this.votes()));
+            }
+        });
+        // Leave time for the final tallies and finish events to reach every client
+        Thread.sleep(3000);
+    }
+
+    private Map<String, Integer> votes() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Integer> votes = new HashMap<>();
+        for (String choice : CHOICES) {
+            votes.put(choice, random.nextInt(100));
+        }
+        return votes;
+    }
+
+}
@@ -0,0 +1,148 @@
+package net.notfab.ttvsi.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValuePercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements shared by every simulated client.
+ * Clients and the embedded server live in the same JVM, so send and delivery times use the same monotonic clock.
+ */
+@Slf4j
+public class LoadStats {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    private final Counter sent = this.registry.counter("load.sent");
+    private final Counter received = this.registry.counter("load.received");
+    private final Counter pollUpdates = this.registry.counter("load.polls.updates");
+    private final Counter pollsFinished = this.registry.counter("load.polls.finished");
+    private final Timer connect = this.timer("load.connect");
+    private final Timer reconnect = this.timer("load.reconnect");
+    private final Timer fanOut = this.timer("load.fanout");
+
+    // Redeem id to the nanoTime it was sent at
+    private final Map<String, Long> redeems = new ConcurrentHashMap<>();
+    private final LongAdder expectedDeliveries = new LongAdder();
+    private final LongAdder deliveries = new LongAdder();
+    private final LongAdder failedReconnects = new LongAdder();
+
+    private final AtomicLong baselineHeap = new AtomicLong();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    public void onSent() {
+        this.sent.increment();
+    }
+
+    public void onReceived() {
+        this.received.increment();
+    }
+
+    public void onPollUpdate() {
+        this.pollUpdates.increment();
+    }
+
+    public void onPollFinished() {
+        this.pollsFinished.increment();
+    }
+
+    public void onConnected(long nanos) {
+        this.connect.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void onReconnected(long nanos, boolean success) {
+        if (success) {
+            this.reconnect.record(nanos, TimeUnit.NANOSECONDS);
+        } else {
+            this.failedReconnects.increment();
+        }
+    }
+
+    /**
+     * A redeem is about to be sent to a room with the given number of clients, all of them should receive it
+     */
+    public void onRedeemSent(String id, int recipients) {
+        this.redeems.put(id, System.nanoTime());
+        this.expectedDeliveries.add(recipients);
+    }
+
+    public void onRedeemDelivered(String id) {
+        Long sentAt = this.redeems.get(id);
+        if (sentAt == null) {
+            return;
+        }
+        this.fanOut.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS);
+        this.deliveries.increment();
+    }
+
+    /**
+     * Heap used right after the server started, before any client connected
+     */
+    public void sampleBaseline() {
+        System.gc();
+        this.baselineHeap.set(this.memory.getHeapMemoryUsage().getUsed());
+    }
+
+    public void sampleHeap() {
+        this.peakHeap.accumulateAndGet(this.memory.getHeapMemoryUsage().getUsed(), Math::max);
+    }
+
+    public void report(Duration elapsed, LoadOptions options) {
+        double seconds = elapsed.toMillis() / 1000.0;
+        System.gc();
+        long finalHeap = this.memory.getHeapMemoryUsage().getUsed();
+
+        log.info("==== Load test: {} clients in {} rooms for {}s ({}) ====",
+                options.clients(), options.rooms(), String.format("%.1f", seconds), options.encoding());
+        log.info("Throughput: {} msg/s sent, {} msg/s received ({} / {} total)",
+                String.format("%.0f", this.sent.count() / seconds), String.format("%.0f", this.received.count() / seconds),
+                (long) this.sent.count(), (long) this.received.count());
+        log.info("Polls: {} updates received, {} finished", (long) this.pollUpdates.count(), (long) this.pollsFinished.count());
+        log.info("Redeems: {} of {} expected deliveries", this.deliveries.sum(), this.expectedDeliveries.sum());
+        log.info("Fan-out latency: {}", this.format(this.fanOut));
+        log.info("Connect: {}", this.format(this.connect));
+        log.info("Reconnect: {} ({} failed)", this.format(this.reconnect), this.failedReconnects.sum());
+        log.info("Heap (server and clients): {} MB baseline, {} MB peak, {} MB after run",
+                this.megabytes(this.baselineHeap.get()), this.megabytes(this.peakHeap.get()), this.megabytes(finalHeap));
+    }
+
+    private Timer timer(String name) {
+        return Timer.builder(name)
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .register(this.registry);
+    }
+
+    private String format(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        StringBuilder builder = new StringBuilder()
+                .append("n=").append(snapshot.count());
+        for (ValuePercentile percentile : snapshot.percentileValues()) {
+            builder.append(", p").append(BigDecimal.valueOf(percentile.percentile() * 100)
+                            .setScale(1, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString())
+                    .append('=').append(String.format("%.2f", percentile.value(TimeUnit.MILLISECONDS))).append("ms");
+        }
+        builder.append(", max=").append(String.format("%.2f", snapshot.max(TimeUnit.MILLISECONDS))).append("ms");
+        return builder.toString();
+    }
+
+    private long megabytes(long bytes) {
+        return bytes / (1024 * 1024);
+    }
+
+}
@@ -0,0 +1,68 @@
+package net.notfab.ttvsi.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.server.Application;
+import net.notfab.ttvsi.server.websocket.BufferedWebSocketHandler;
+import net.notfab.ttvsi.server.websocket.ReplayLog;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Runs a {@link LoadScenario} against a ttv-server embedded in this JVM, listening on a random localhost port.
+ * <p>
+ * Usage: {@code --clients=200 --rooms=20 --duration=60 --progress-interval=500 --burst-interval=5000
+ * --burst-size=20 --reconnect-fraction=0.1 --encoding=JSON}
+ */
+@Slf4j
+public class LoadTest {
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadOptions options = LoadOptions.parse(args);
+        LoadStats stats = new LoadStats();
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.address=127.0.0.1",
+                        "server.port=0",
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "logging.level.net.notfab.ttvsi.loadtest=INFO",
+                        // Nothing from a run should outlive it
+                        "ttv.store.type=MEMORY",
+                        "ttv.cluster.type=MEMORY")
+                .run();
+        int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+        stats.sampleBaseline();
+
+        LoadScenario scenario = new LoadScenario(options, URI.create("ws://127.0.0.1:" + port + "/websocket"), stats);
+        long start = System.nanoTime();
+        try {
+            scenario.run();
+            stats.report(Duration.ofNanos(System.nanoTime() - start), options);
+            report(context);
+        } finally {
+            scenario.close();
+            context.close();
+        }
+    }
+
+    /**
+     * Server side view of the run, read from the embedded server's own beans and meters
+     */
+    private static void report(ConfigurableApplicationContext context) {
+        BufferedWebSocketHandler server = context.getBean(BufferedWebSocketHandler.class);
+        MeterRegistry registry = context.getBean(MeterRegistry.class);
+        long replayBytes = server.getReplayLogs().values().stream().mapToLong(ReplayLog::getBytes).sum();
+        log.info("Server: {} sessions, {} KB in replay logs, {} KB queued",
+                server.getSessionCount(), replayBytes / 1024, server.getQueuedBytes() / 1024);
+        for (Counter dropped : registry.find("ttv.messages.dropped").counters()) {
+            log.info("Server dropped ({}): {}", dropped.getId().getTag("reason"), (long) dropped.count());
+        }
+    }
+
+}
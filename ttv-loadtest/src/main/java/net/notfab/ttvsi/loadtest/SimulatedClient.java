@@ -0,0 +1,156 @@
+package net.notfab.ttvsi.loadtest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.common.Headers;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
+import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.polls.server.ServerPollFinishedEvent;
+import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
+import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+
+/**
+ * Headless stand-in for a desktop client, handshakes exactly like the client's NetworkSocket
+ * but only records what it receives instead of acting on it.
+ */
+@Slf4j
+public class SimulatedClient extends WebSocketClient {
+
+    private final LoadStats stats;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Getter
+    private final WsCredentials credentials;
+
+    // Encoding accepted by the server, JSON until the handshake says otherwise
+    private volatile WireEncoding encoding = WireEncoding.JSON;
+    private volatile ObjectMapper encodingMapper = this.mapper;
+
+    // Last room sequence number received and the epoch of the log that assigned it,
+    // sent back on reconnect to only receive missed messages
+    private volatile long lastSequence = -1;
+    private volatile long lastEpoch = 0;
+
+    public SimulatedClient(URI uri, WsCredentials credentials, WireEncoding encoding, LoadStats stats) {
+        super(uri);
+        this.credentials = credentials;
+        this.stats = stats;
+        this.addHeader(Headers.X_CLIENT_ID, credentials.clientId().toString());
+        this.addHeader(Headers.X_TWITCH_ID, credentials.twitchId());
+        this.addHeader(Headers.X_ROOM_ID, credentials.roomId());
+        this.addHeader(Headers.X_ENCODING, encoding.name());
+    }
+
+    /**
+     * Drop the connection and come back with the last sequence seen, timing how long until the handshake completes
+     */
+    public void bounce() throws InterruptedException {
+        this.closeBlocking();
+        if (this.lastSequence >= 0) {
+            this.addHeader(Headers.X_LAST_SEQUENCE, String.valueOf(this.lastSequence));
+            this.addHeader(Headers.X_LAST_EPOCH, String.valueOf(this.lastEpoch));
+        }
+        long start = System.nanoTime();
+        boolean connected = this.reconnectBlocking();
+        this.stats.onReconnected(System.nanoTime() - start, connected);
+    }
+
+    /**
+     * Send an event if connected
+     *
+     * @return false if the client is not connected or the event could not be serialized
+     */
+    public boolean emit(NetworkEvent event) {
+        if (!this.isOpen()) {
+            return false;
+        }
+        try {
+            if (this.encoding.isBinary()) {
+                this.send(this.encodingMapper.writeValueAsBytes(event));
+            } else {
+                this.send(this.mapper.writeValueAsString(event));
+            }
+        } catch (JsonProcessingException ex) {
+            log.error("Failed to serialize {}", event.getType(), ex);
+            return false;
+        }
+        this.stats.onSent();
+        return true;
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshake) {
+        WireEncoding accepted = WireEncoding.fromHeader(handshake.getFieldValue(Headers.X_ENCODING));
+        if (accepted != this.encoding) {
+            this.encoding = accepted;
+            this.encodingMapper = accepted.createMapper();
+        }
+    }
+
+    @Override
+    public void onMessage(String message) {
+        try {
+            this.onMessage(this.mapper.readTree(message));
+        } catch (JsonProcessingException ex) {
+            log.error("Failed to parse network message", ex);
+        }
+    }
+
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        try {
+            byte[] message = new byte[bytes.remaining()];
+            bytes.get(message);
+            this.onMessage(this.encodingMapper.readTree(message));
+        } catch (IOException ex) {
+            log.error("Failed to parse network message", ex);
+        }
+    }
+
+    private void onMessage(JsonNode node) throws JsonProcessingException {
+        JsonNode sequence = node.get(NetworkEvent.SEQUENCE);
+        if (sequence != null) {
+            long epoch = node.path(NetworkEvent.EPOCH).asLong();
+            if (epoch != this.lastEpoch) {
+                // Numbered by another log (other node, or recreated), sequences can't be compared
+                this.lastEpoch = epoch;
+                this.lastSequence = -1;
+            }
+            if (sequence.asLong() <= this.lastSequence) {
+                return;
+            }
+            this.lastSequence = sequence.asLong();
+        }
+        this.stats.onReceived();
+        switch (this.mapper.treeToValue(node, NetworkEvent.class)) {
+            case RewardRedeemEvent redeem -> this.stats.onRedeemDelivered(redeem.getId());
+            case ServerPollUpdateEvent ignored -> this.stats.onPollUpdate();
+            case ServerPollFinishedEvent ignored -> this.stats.onPollFinished();
+            case null, default -> {
+            }
+        }
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        if (remote) {
+            log.warn("Client {} disconnected by server ({} - {})", this.credentials.twitchId(), code, reason);
+        }
+    }
+
+    @Override
+    public void onError(Exception exception) {
+        log.warn("Client {} socket error", this.credentials.twitchId(), exception);
+    }
+
+}
@@ -0,0 +1,51 @@
+package net.notfab.ttvsi.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shape of a Twitch soak run, parsed from {@code --name=value} arguments.
+ *
+ * @param duration          how long Twitch traffic is driven for
+ * @param rewards           custom rewards the client is asked to keep on twitch
+ * @param redeemsPerSecond  rate of redemptions pushed over EventSub
+ * @param pollInterval      how often a new poll is requested, polls last half of it
+ * @param reconnectInterval how often EventSub asks the client to move to a new connection
+ * @param replay            recorded EventSub traffic to replay on top, one JSON message per line, may be null
+ * @param replayPerSecond   rate at which the recorded traffic is replayed
+ */
+public record TwitchSoakOptions(Duration duration, int rewards, double redeemsPerSecond, Duration pollInterval,
+                                Duration reconnectInterval, Path replay, double replayPerSecond) {
+
+    public static TwitchSoakOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, split), arg.substring(split + 1));
+            }
+        }
+        TwitchSoakOptions options = new TwitchSoakOptions(
+                Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "300"))),
+                Integer.parseInt(values.getOrDefault("rewards", "10")),
+                Double.parseDouble(values.getOrDefault("redeems-per-second", "5")),
+                Duration.ofSeconds(Long.parseLong(values.getOrDefault("poll-interval", "60"))),
+                Duration.ofSeconds(Long.parseLong(values.getOrDefault("reconnect-interval", "120"))),
+                values.containsKey("replay") ? Path.of(values.get("replay")) : null,
+                Double.parseDouble(values.getOrDefault("replay-per-second", "10")));
+        if (options.rewards() < 1 || options.rewards() > 30) {
+            throw new IllegalArgumentException("Twitch allows between 1 and 30 custom rewards");
+        } else if (options.pollInterval().toSeconds() < 30) {
+            throw new IllegalArgumentException("Polls last at least 15 seconds, poll interval must be 30 or more");
+        }
+        return options;
+    }
+
+}
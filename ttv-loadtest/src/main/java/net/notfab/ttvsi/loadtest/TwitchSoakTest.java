@@ -0,0 +1,169 @@
+package net.notfab.ttvsi.loadtest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.client.models.SocketState;
+import net.notfab.ttvsi.client.models.events.NetworkStateEvent;
+import net.notfab.ttvsi.client.models.events.TwitchEstablishedEvent;
+import net.notfab.ttvsi.client.network.NetworkAPI;
+import net.notfab.ttvsi.client.twitch.TwitchOAuthManager;
+import net.notfab.ttvsi.common.NetEvent;
+import net.notfab.ttvsi.common.polls.Choice;
+import net.notfab.ttvsi.common.polls.Poll;
+import net.notfab.ttvsi.common.polls.client.ClientRequestedPollCreateEvent;
+import net.notfab.ttvsi.common.rewards.Reward;
+import net.notfab.ttvsi.common.rewards.client.ClientUpdateRewardsEvent;
+import net.notfab.ttvsi.loadtest.twitch.FakeHelix;
+import net.notfab.ttvsi.loadtest.twitch.FakeTwitch;
+import net.notfab.ttvsi.server.Application;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/**
+ * Soaks the client's Twitch path without network access: a {@link FakeTwitch}, a ttv-server and a headless
+ * ttv-client all run in this JVM on random localhost ports, the client pointed at the fakes through
+ * {@code ttv.twitch.*-url}.
+ * <p>
+ * The client is authorized, joins a room and is asked to keep a set of rewards on twitch, then FakeTwitch pushes
+ * redemptions, polls requested through the room and periodic EventSub reconnects for the whole run.
+ * <p>
+ * Usage: {@code ./gradlew :ttv-loadtest:twitchSoak --args="--duration=300 --rewards=10 --redeems-per-second=5
+ * --poll-interval=60 --reconnect-interval=120 --replay=traffic.jsonl --replay-per-second=10"}
+ */
+@Slf4j
+public class TwitchSoakTest {
+
+    private static final String ROOM = "twitch-soak";
+
+    public static void main(String[] args) throws Exception {
+        TwitchSoakOptions options = TwitchSoakOptions.parse(args);
+        try (FakeTwitch twitch = new FakeTwitch()) {
+            twitch.start();
+
+            ConfigurableApplicationContext server = new SpringApplicationBuilder(Application.class)
+                    .properties(
+                            "server.address=127.0.0.1",
+                            "server.port=0",
+                            "spring.main.banner-mode=off",
+                            "logging.level.root=WARN",
+                            "logging.level.net.notfab.ttvsi.loadtest=INFO",
+                            // Nothing from a run should outlive it
+                            "ttv.store.type=MEMORY",
+                            "ttv.cluster.type=MEMORY")
+                    .run();
+            int port = server.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+
+            CountDownLatch connected = new CountDownLatch(1);
+            CountDownLatch established = new CountDownLatch(1);
+            ConfigurableApplicationContext client = new SpringApplicationBuilder(
+                    net.notfab.ttvsi.client.Application.class)
+                    .listeners((ApplicationListener<NetworkStateEvent>) event -> {
+                        if (event.state() == SocketState.CONNECTED) {
+                            connected.countDown();
+                        }
+                    }, (ApplicationListener<TwitchEstablishedEvent>) event -> established.countDown())
+                    .properties(
+                            // Both application.yml files are on this classpath, the client's settings come from here
+                            "spring.config.name=ttv-twitch-soak",
+                            "server.address=127.0.0.1",
+                            "server.port=0",
+                            "spring.main.banner-mode=off",
+                            "ttv.ui.enabled=false",
+                            "ttv.twitch.helix-url=" + twitch.getHelixUrl(),
+                            "ttv.twitch.oauth-url=" + twitch.getOAuthUrl(),
+                            "ttv.twitch.eventsub-url=" + twitch.getEventSubUrl(),
+                            "logging.level.root=WARN",
+                            "logging.level.net.notfab.ttvsi.loadtest=INFO")
+                    .run();
+
+            List<ScheduledFuture<?>> traffic = new ArrayList<>();
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+            try {
+                if (!client.getBean(TwitchOAuthManager.class).validate("soak-token")) {
+                    throw new IllegalStateException("Client could not authorize against fake twitch");
+                }
+                NetworkAPI network = client.getBean(NetworkAPI.class);
+                network.connect("ws://127.0.0.1:" + port + "/websocket", ROOM);
+                if (!connected.await(30, TimeUnit.SECONDS) || !established.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Client did not connect to the server and fake EventSub");
+                }
+                network.publish(rewards(options.rewards()));
+
+                traffic.add(twitch.redeemAt(options.redeemsPerSecond()));
+                if (options.replay() != null) {
+                    traffic.add(twitch.replay(FakeTwitch.load(options.replay()), options.replayPerSecond()));
+                }
+                long pollInterval = options.pollInterval().toSeconds();
+                scheduler.scheduleAtFixedRate(() -> network.publish(poll((int) pollInterval / 2)),
+                        0, pollInterval, TimeUnit.SECONDS);
+                long reconnectInterval = options.reconnectInterval().toSeconds();
+                scheduler.scheduleAtFixedRate(twitch::requestReconnect,
+                        reconnectInterval, reconnectInterval, TimeUnit.SECONDS);
+
+                log.info("Soaking the client's twitch path for {}", options.duration());
+                Thread.sleep(options.duration().toMillis());
+                report(twitch, client, server);
+            } finally {
+                scheduler.shutdownNow();
+                traffic.forEach(future -> future.cancel(false));
+                client.close();
+                server.close();
+            }
+        }
+    }
+
+    private static ClientUpdateRewardsEvent rewards(int count) {
+        List<Reward> rewards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Reward reward = new Reward();
+            reward.setId("soak-" + i);
+            reward.setTitle("Soak reward " + i);
+            reward.setCost(100 + i);
+            reward.setPrompt("Redeemed by the twitch soak test");
+            rewards.add(reward);
+        }
+        ClientUpdateRewardsEvent event = new ClientUpdateRewardsEvent();
+        event.setChannel(FakeHelix.BROADCASTER_LOGIN);
+        event.setRewards(rewards);
+        return event;
+    }
+
+    private static ClientRequestedPollCreateEvent poll(int duration) {
+        Poll poll = new Poll();
+        poll.setId(UUID.randomUUID().toString());
+        poll.setTitle("Soak poll");
+        poll.setDuration(duration);
+        poll.setChoices(List.of("red", "green", "blue").stream().map(id -> {
+            Choice choice = new Choice();
+            choice.setId(id);
+            choice.setTitle(id);
+            return choice;
+        }).toList());
+        return new ClientRequestedPollCreateEvent(poll, FakeHelix.BROADCASTER_LOGIN);
+    }
+
+    /**
+     * What the fakes sent, what the client did with it and what reached the server
+     */
+    private static void report(FakeTwitch twitch, ConfigurableApplicationContext client,
+                               ConfigurableApplicationContext server) {
+        log.info("Fake twitch: {} EventSub messages sent, {} helix requests, {} rate limited",
+                twitch.getEventSub().getSent(), twitch.getHelix().getRequests(), twitch.getHelix().getLimited());
+        for (Counter retries : client.getBean(MeterRegistry.class).find("ttv.helix.retries").counters()) {
+            log.info("Client helix retries ({}): {}", retries.getId().getTag("reason"), (long) retries.count());
+        }
+        MeterRegistry registry = server.getBean(MeterRegistry.class);
+        for (NetEvent type : List.of(NetEvent.REWARD_REDEEMED, NetEvent.CLIENT_POLL_PROGRESS, NetEvent.CLIENT_POLL_FINISHED)) {
+            Counter inbound = registry.find("ttv.messages.inbound").tag("type", type.name()).counter();
+            log.info("Server received {}: {}", type, inbound == null ? 0 : (long) inbound.count());
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+package net.notfab.ttvsi.loadtest.twitch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * EventSub websocket transport: welcomes every connection with a session id, sends keepalives
+ * and delivers notifications to the session a subscription was registered for.
+ */
+@Slf4j
+public class FakeEventSub extends WebSocketServer {
+
+    // Query parameter of reconnect urls, naming the session to resume
+    private static final String RESUME = "session=";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Duration keepalive;
+    private final ScheduledExecutorService scheduler;
+    private final CountDownLatch started = new CountDownLatch(1);
+    // Session id to connection
+    private final Map<String, WebSocket> sessions = new ConcurrentHashMap<>();
+    private final LongAdder sent = new LongAdder();
+
+    public FakeEventSub(InetSocketAddress address, Duration keepalive, ScheduledExecutorService scheduler) {
+        super(address);
+        this.keepalive = keepalive;
+        this.scheduler = scheduler;
+        this.setReuseAddr(true);
+    }
+
+    /**
+     * Start listening, blocking until the port is bound
+     */
+    public void startBlocking() throws InterruptedException {
+        this.start();
+        if (!this.started.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("EventSub server failed to start");
+        }
+    }
+
+    public String getUrl() {
+        return "ws://127.0.0.1:" + this.getPort() + "/ws";
+    }
+
+    public boolean isConnected(String session) {
+        WebSocket socket = this.sessions.get(session);
+        return socket != null && socket.isOpen();
+    }
+
+    public long getSent() {
+        return this.sent.sum();
+    }
+
+    /**
+     * Deliver a notification for a subscription to the session it was registered on
+     *
+     * @return false if that session is gone
+     */
+    public boolean notify(ObjectNode subscription, ObjectNode event) {
+        String session = subscription.path("transport").path("session_id").asText();
+        WebSocket socket = this.sessions.get(session);
+        if (socket == null || !socket.isOpen()) {
+            return false;
+        }
+        ObjectNode message = this.mapper.createObjectNode();
+        ObjectNode metadata = this.metadata(message, "notification");
+        metadata.put("subscription_type", subscription.path("type").asText());
+        metadata.put("subscription_version", subscription.path("version").asText("1"));
+        ObjectNode payload = message.putObject("payload");
+        payload.set("subscription", subscription);
+        payload.set("event", event);
+        return this.send(socket, message.toString());
+    }
+
+    /**
+     * Send a raw message to every session, used to replay recorded traffic
+     */
+    public void broadcast(String message) {
+        this.sessions.values().forEach(socket -> this.send(socket, message));
+    }
+
+    /**
+     * Ask every session to move to a new connection, like Twitch does before maintenance.
+     * Connecting to the reconnect url resumes the session with its subscriptions, then the old connection is closed.
+     */
+    public void requestReconnect() {
+        this.sessions.forEach((id, socket) -> {
+            ObjectNode message = this.mapper.createObjectNode();
+            this.metadata(message, "session_reconnect");
+            this.session(message, id, "reconnecting").put("reconnect_url", this.getUrl() + "?" + RESUME + id);
+            this.send(socket, message.toString());
+        });
+    }
+
+    @Override
+    public void onStart() {
+        long interval = this.keepalive.toMillis();
+        this.scheduler.scheduleAtFixedRate(this::keepalive, interval, interval, TimeUnit.MILLISECONDS);
+        this.started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket socket, ClientHandshake handshake) {
+        String descriptor = handshake.getResourceDescriptor();
+        int resume = descriptor.indexOf(RESUME);
+        String id = resume < 0 ? null : descriptor.substring(resume + RESUME.length());
+        WebSocket previous = id == null ? null : this.sessions.get(id);
+        if (previous == null) {
+            id = UUID.randomUUID().toString();
+        }
+        socket.setAttachment(id);
+        this.sessions.put(id, socket);
+        ObjectNode message = this.mapper.createObjectNode();
+        this.metadata(message, "session_welcome");
+        this.session(message, id, "connected").putNull("reconnect_url");
+        this.send(socket, message.toString());
+        if (previous != null) {
+            previous.close(1000, "Session moved");
+        }
+    }
+
+    @Override
+    public void onClose(WebSocket socket, int code, String reason, boolean remote) {
+        String id = socket.getAttachment();
+        if (id != null) {
+            this.sessions.remove(id, socket);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket socket, String message) {
+        // Clients never send anything over EventSub, Twitch disconnects them when they do
+        socket.close(4001, "Client sent inbound traffic");
+    }
+
+    @Override
+    public void onError(WebSocket socket, Exception ex) {
+        log.warn("EventSub connection error", ex);
+    }
+
+    private void keepalive() {
+        this.sessions.values().forEach(socket -> {
+            ObjectNode message = this.mapper.createObjectNode();
+            this.metadata(message, "session_keepalive");
+            message.putObject("payload");
+            this.send(socket, message.toString());
+        });
+    }
+
+    private ObjectNode metadata(ObjectNode message, String type) {
+        ObjectNode metadata = message.putObject("metadata");
+        metadata.put("message_id", UUID.randomUUID().toString());
+        metadata.put("message_type", type);
+        metadata.put("message_timestamp", Instant.now().toString());
+        return metadata;
+    }
+
+    private ObjectNode session(ObjectNode message, String id, String status) {
+        ObjectNode session = message.putObject("payload").putObject("session");
+        session.put("id", id);
+        session.put("status", status);
+        session.put("connected_at", Instant.now().toString());
+        session.put("keepalive_timeout_seconds", this.keepalive.toSeconds());
+        return session;
+    }
+
+    private boolean send(WebSocket socket, String message) {
+        if (!socket.isOpen()) {
+            return false;
+        }
+        socket.send(message);
+        this.sent.increment();
+        return true;
+    }
+
+}
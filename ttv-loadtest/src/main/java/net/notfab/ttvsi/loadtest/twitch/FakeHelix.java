@@ -0,0 +1,298 @@
+package net.notfab.ttvsi.loadtest.twitch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Helix and OAuth endpoints used by the client: token validation, EventSub subscriptions, polls and custom rewards.
+ * Every Helix response carries {@code Ratelimit-*} headers and requests are answered with 429 once the bucket is empty.
+ */
+@Slf4j
+public class FakeHelix {
+
+    public static final String BROADCASTER_ID = "1000";
+    public static final String BROADCASTER_LOGIN = "fake_streamer";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final HttpServer server;
+    private final HelixRateLimit rateLimit;
+    private final Consumer<ObjectNode> onPollCreated;
+
+    private final Map<String, ObjectNode> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, ObjectNode> rewards = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder limited = new LongAdder();
+
+    public FakeHelix(InetSocketAddress address, HelixRateLimit rateLimit, Consumer<ObjectNode> onPollCreated) throws IOException {
+        this.rateLimit = rateLimit;
+        this.onPollCreated = onPollCreated;
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/oauth2/validate", this::validate);
+        this.server.createContext("/helix/eventsub/subscriptions", exchange -> this.helix(exchange, this::subscriptions));
+        this.server.createContext("/helix/polls", exchange -> this.helix(exchange, this::polls));
+        this.server.createContext("/helix/channel_points/custom_rewards", exchange -> this.helix(exchange, this::rewards));
+    }
+
+    public void start() {
+        this.server.start();
+    }
+
+    public void stop() {
+        this.server.stop(0);
+    }
+
+    public String getHelixUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/helix";
+    }
+
+    public String getOAuthUrl() {
+        return "http://127.0.0.1:" + this.server.getAddress().getPort() + "/oauth2";
+    }
+
+    /**
+     * Subscriptions registered for an EventSub type, over every session
+     */
+    public List<ObjectNode> getSubscriptions(String type) {
+        return this.subscriptions.values().stream()
+                .filter(subscription -> type.equals(subscription.path("type").asText()))
+                .toList();
+    }
+
+    public Collection<ObjectNode> getRewards() {
+        return this.rewards.values();
+    }
+
+    public long getRequests() {
+        return this.requests.sum();
+    }
+
+    public long getLimited() {
+        return this.limited.sum();
+    }
+
+    private void validate(HttpExchange exchange) throws IOException {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith("OAuth ")) {
+            this.error(exchange, 401, "invalid access token");
+            return;
+        }
+        ObjectNode body = this.mapper.createObjectNode();
+        body.put("client_id", "fake");
+        body.put("login", BROADCASTER_LOGIN);
+        body.put("user_id", BROADCASTER_ID);
+        body.put("expires_in", 3600);
+        body.putArray("scopes")
+                .add("channel:manage:polls")
+                .add("channel:read:polls")
+                .add("channel:manage:redemptions");
+        this.respond(exchange, 200, body);
+    }
+
+    private void helix(HttpExchange exchange, Handler handler) throws IOException {
+        this.requests.increment();
+        boolean allowed = this.rateLimit.take();
+        exchange.getResponseHeaders().set("Ratelimit-Limit", String.valueOf(this.rateLimit.getLimit()));
+        exchange.getResponseHeaders().set("Ratelimit-Remaining", String.valueOf(this.rateLimit.getRemaining()));
+        exchange.getResponseHeaders().set("Ratelimit-Reset", String.valueOf(this.rateLimit.getReset()));
+        try (exchange) {
+            if (exchange.getRequestHeaders().getFirst("Authorization") == null) {
+                this.error(exchange, 401, "OAuth token is missing");
+            } else if (!allowed) {
+                this.limited.increment();
+                this.error(exchange, 429, "Too Many Requests");
+            } else {
+                handler.handle(exchange, this.query(exchange));
+            }
+        } catch (RuntimeException ex) {
+            log.error("Fake helix failed to answer {}", exchange.getRequestURI(), ex);
+            this.error(exchange, 500, "Internal Server Error");
+        }
+    }
+
+    private void subscriptions(HttpExchange exchange, Map<String, String> query) throws IOException {
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> {
+                ObjectNode body = this.mapper.createObjectNode();
+                body.putArray("data").addAll(this.subscriptions.values());
+                body.put("total", this.subscriptions.size());
+                body.put("total_cost", 0);
+                body.put("max_total_cost", 10);
+                this.respond(exchange, 200, body);
+            }
+            case "POST" -> {
+                JsonNode request = this.read(exchange);
+                ObjectNode subscription = this.mapper.createObjectNode();
+                subscription.put("id", UUID.randomUUID().toString());
+                subscription.put("status", "enabled");
+                subscription.put("type", request.path("type").asText());
+                subscription.put("version", request.path("version").asText("1"));
+                subscription.set("condition", request.get("condition"));
+                subscription.set("transport", request.get("transport"));
+                subscription.put("created_at", Instant.now().toString());
+                subscription.put("cost", 0);
+                this.subscriptions.put(subscription.get("id").asText(), subscription);
+                this.respond(exchange, 202, this.data(subscription));
+            }
+            case "DELETE" -> {
+                if (this.subscriptions.remove(query.getOrDefault("id", "")) == null) {
+                    this.error(exchange, 404, "subscription not found");
+                } else {
+                    this.respond(exchange, 204, null);
+                }
+            }
+            default -> this.error(exchange, 405, "Method Not Allowed");
+        }
+    }
+
+    private void polls(HttpExchange exchange, Map<String, String> query) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            this.error(exchange, 405, "Method Not Allowed");
+            return;
+        }
+        JsonNode request = this.read(exchange);
+        ObjectNode poll = this.mapper.createObjectNode();
+        poll.put("id", UUID.randomUUID().toString());
+        poll.put("broadcaster_id", BROADCASTER_ID);
+        poll.put("broadcaster_login", BROADCASTER_LOGIN);
+        poll.put("title", request.path("title").asText());
+        ArrayNode choices = poll.putArray("choices");
+        for (JsonNode choice : request.path("choices")) {
+            choices.addObject()
+                    .put("id", UUID.randomUUID().toString())
+                    .put("title", choice.path("title").asText())
+                    .put("votes", 0)
+                    .put("channel_points_votes", 0)
+                    .put("bits_votes", 0);
+        }
+        poll.put("channel_points_voting_enabled", request.path("channel_points_voting_enabled").asBoolean(false));
+        poll.put("channel_points_per_vote", request.path("channel_points_per_vote").asInt(0));
+        poll.put("status", "ACTIVE");
+        poll.put("duration", request.path("duration").asInt(15));
+        poll.put("started_at", Instant.now().toString());
+        this.respond(exchange, 200, this.data(poll));
+        this.onPollCreated.accept(poll);
+    }
+
+    private synchronized void rewards(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String id = query.get("id");
+        switch (exchange.getRequestMethod()) {
+            case "GET" -> {
+                ObjectNode body = this.mapper.createObjectNode();
+                ArrayNode data = body.putArray("data");
+                this.rewards.values().stream()
+                        .filter(reward -> id == null || id.equals(reward.path("id").asText()))
+                        .forEach(data::add);
+                this.respond(exchange, 200, body);
+            }
+            case "POST" -> {
+                JsonNode request = this.read(exchange);
+                String title = request.path("title").asText();
+                boolean duplicate = this.rewards.values().stream()
+                        .anyMatch(reward -> title.equals(reward.path("title").asText()));
+                if (duplicate) {
+                    this.error(exchange, 400, "CREATE_CUSTOM_REWARD_DUPLICATE_REWARD");
+                    return;
+                }
+                ObjectNode reward = ((ObjectNode) request).deepCopy();
+                reward.put("id", UUID.randomUUID().toString());
+                reward.put("broadcaster_id", BROADCASTER_ID);
+                reward.put("is_enabled", true);
+                this.rewards.put(reward.get("id").asText(), reward);
+                this.respond(exchange, 200, this.data(reward));
+            }
+            case "PATCH" -> {
+                ObjectNode reward = id == null ? null : this.rewards.get(id);
+                if (reward == null) {
+                    this.error(exchange, 404, "reward not found");
+                    return;
+                }
+                reward.setAll((ObjectNode) this.read(exchange));
+                reward.put("id", id);
+                this.respond(exchange, 200, this.data(reward));
+            }
+            case "DELETE" -> {
+                if (id == null || this.rewards.remove(id) == null) {
+                    this.error(exchange, 404, "reward not found");
+                } else {
+                    this.respond(exchange, 204, null);
+                }
+            }
+            default -> this.error(exchange, 405, "Method Not Allowed");
+        }
+    }
+
+    private ObjectNode data(JsonNode item) {
+        ObjectNode body = this.mapper.createObjectNode();
+        body.putArray("data").add(item);
+        return body;
+    }
+
+    private JsonNode read(HttpExchange exchange) throws IOException {
+        JsonNode node = this.mapper.readTree(exchange.getRequestBody());
+        return node == null || !node.isObject() ? this.mapper.createObjectNode() : node;
+    }
+
+    private Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String pair : raw.split("&")) {
+            int split = pair.indexOf('=');
+            if (split > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, split), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(split + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private void error(HttpExchange exchange, int status, String message) throws IOException {
+        ObjectNode body = this.mapper.createObjectNode();
+        body.put("error", message);
+        body.put("status", status);
+        body.put("message", message);
+        this.respond(exchange, status, body);
+    }
+
+    private void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = this.mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+
+        void handle(HttpExchange exchange, Map<String, String> query) throws IOException;
+
+    }
+
+}
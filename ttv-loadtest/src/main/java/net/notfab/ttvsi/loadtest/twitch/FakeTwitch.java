@@ -0,0 +1,225 @@
+package net.notfab.ttvsi.loadtest.twitch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for Twitch's EventSub websocket and Helix API, so the client's Twitch path can be benchmarked
+ * and soak-tested without network access. Point the client at it with
+ * {@code ttv.twitch.helix-url}, {@code ttv.twitch.oauth-url} and {@code ttv.twitch.eventsub-url}.
+ * <p>
+ * Polls created through Helix progress on their own and end after their duration, redemptions and
+ * recorded EventSub traffic are pushed at configurable rates.
+ *
+ * @see #redeem(String, String, String)
+ * @see #replay(List, double)
+ */
+@Slf4j
+public class FakeTwitch implements AutoCloseable {
+
+    private static final String POLL_PROGRESS = "channel.poll.progress";
+    private static final String POLL_END = "channel.poll.end";
+    private static final String REDEMPTION = "channel.channel_points_custom_reward_redemption.add";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Duration pollInterval;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final FakeEventSub eventSub;
+    private final FakeHelix helix;
+    private final AtomicInteger viewers = new AtomicInteger();
+
+    /**
+     * @param keepalive    interval between EventSub keepalive messages
+     * @param pollInterval interval between progress notifications of every running poll
+     * @param rateLimit    Helix points per minute, Twitch gives 800 to a user token
+     */
+    public FakeTwitch(Duration keepalive, Duration pollInterval, int rateLimit) throws IOException {
+        this.pollInterval = pollInterval;
+        this.eventSub = new FakeEventSub(new InetSocketAddress("127.0.0.1", 0), keepalive, this.scheduler);
+        this.helix = new FakeHelix(new InetSocketAddress("127.0.0.1", 0), new HelixRateLimit(rateLimit), this::onPollCreated);
+    }
+
+    public FakeTwitch() throws IOException {
+        this(Duration.ofSeconds(10), Duration.ofSeconds(1), 800);
+    }
+
+    public void start() throws InterruptedException {
+        this.helix.start();
+        this.eventSub.startBlocking();
+        log.info("Fake twitch listening (helix {}, eventsub {})", this.getHelixUrl(), this.getEventSubUrl());
+    }
+
+    public String getHelixUrl() {
+        return this.helix.getHelixUrl();
+    }
+
+    public String getOAuthUrl() {
+        return this.helix.getOAuthUrl();
+    }
+
+    public String getEventSubUrl() {
+        return this.eventSub.getUrl();
+    }
+
+    public FakeHelix getHelix() {
+        return this.helix;
+    }
+
+    public FakeEventSub getEventSub() {
+        return this.eventSub;
+    }
+
+    /**
+     * Redeem a custom reward created through Helix
+     *
+     * @return the number of subscriptions notified
+     */
+    public int redeem(String rewardId, String login, String input) {
+        ObjectNode reward = this.helix.getRewards().stream()
+                .filter(item -> rewardId.equals(item.path("id").asText()))
+                .findFirst().orElse(null);
+        ObjectNode event = this.mapper.createObjectNode();
+        event.put("id", UUID.randomUUID().toString());
+        event.put("broadcaster_user_id", FakeHelix.BROADCASTER_ID);
+        event.put("broadcaster_user_login", FakeHelix.BROADCASTER_LOGIN);
+        event.put("broadcaster_user_name", FakeHelix.BROADCASTER_LOGIN);
+        event.put("user_id", String.valueOf(login.hashCode()));
+        event.put("user_login", login);
+        event.put("user_name", login);
+        event.put("user_input", input == null ? "" : input);
+        event.put("status", "fulfilled");
+        ObjectNode details = event.putObject("reward");
+        details.put("id", rewardId);
+        details.put("title", reward == null ? rewardId : reward.path("title").asText());
+        details.put("cost", reward == null ? 0 : reward.path("cost").asInt());
+        details.put("prompt", reward == null ? "" : reward.path("prompt").asText());
+        event.put("redeemed_at", Instant.now().toString());
+        return this.notify(REDEMPTION, event);
+    }
+
+    /**
+     * Keep redeeming random rewards created through Helix, by a rotating set of viewers
+     */
+    public ScheduledFuture<?> redeemAt(double perSecond) {
+        return this.scheduler.scheduleAtFixedRate(() -> {
+            List<ObjectNode> rewards = new ArrayList<>(this.helix.getRewards());
+            if (rewards.isEmpty()) {
+                return;
+            }
+            ObjectNode reward = rewards.get(ThreadLocalRandom.current().nextInt(rewards.size()));
+            this.redeem(reward.path("id").asText(), "viewer_" + this.viewers.incrementAndGet() % 1000, null);
+        }, 0, this.period(perSecond), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Replay recorded EventSub messages to every session in order, looping until cancelled.
+     * Message ids and timestamps are refreshed so replays look like new traffic.
+     */
+    public ScheduledFuture<?> replay(List<String> messages, double perSecond) {
+        if (messages.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to replay");
+        }
+        AtomicInteger next = new AtomicInteger();
+        return this.scheduler.scheduleAtFixedRate(() -> {
+            String message = messages.get(Math.floorMod(next.getAndIncrement(), messages.size()));
+            this.eventSub.broadcast(this.restamp(message));
+        }, 0, this.period(perSecond), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Recorded EventSub traffic, one JSON message per line
+     */
+    public static List<String> load(Path path) throws IOException {
+        try (var lines = Files.lines(path)) {
+            return lines.filter(line -> !line.isBlank()).toList();
+        }
+    }
+
+    /**
+     * Ask every EventSub session to reconnect
+     */
+    public void requestReconnect() {
+        this.eventSub.requestReconnect();
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        this.scheduler.shutdownNow();
+        this.eventSub.stop(1000);
+        this.helix.stop();
+    }
+
+    private void onPollCreated(ObjectNode poll) {
+        int duration = poll.path("duration").asInt();
+        ScheduledFuture<?> progress = this.scheduler.scheduleAtFixedRate(() -> {
+            synchronized (poll) {
+                for (JsonNode choice : poll.path("choices")) {
+                    ObjectNode votes = (ObjectNode) choice;
+                    int points = ThreadLocalRandom.current().nextInt(5);
+                    votes.put("channel_points_votes", votes.path("channel_points_votes").asInt() + points);
+                    votes.put("votes", votes.path("votes").asInt() + points + ThreadLocalRandom.current().nextInt(5));
+                }
+                this.notify(POLL_PROGRESS, poll.deepCopy());
+            }
+        }, this.pollInterval.toMillis(), this.pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        this.scheduler.schedule(() -> {
+            progress.cancel(false);
+            synchronized (poll) {
+                ObjectNode ended = poll.deepCopy();
+                ended.put("status", "COMPLETED");
+                ended.put("ended_at", Instant.now().toString());
+                this.notify(POLL_END, ended);
+            }
+        }, duration, TimeUnit.SECONDS);
+    }
+
+    private int notify(String type, ObjectNode event) {
+        int notified = 0;
+        for (ObjectNode subscription : this.helix.getSubscriptions(type)) {
+            if (this.eventSub.notify(subscription, event)) {
+                notified++;
+            }
+        }
+        return notified;
+    }
+
+    private String restamp(String message) {
+        try {
+            JsonNode node = this.mapper.readTree(message);
+            if (node.path("metadata") instanceof ObjectNode metadata) {
+                metadata.put("message_id", UUID.randomUUID().toString());
+                metadata.put("message_timestamp", Instant.now().toString());
+            }
+            JsonNode event = node.has("event") ? node.get("event") : node.path("payload").path("event");
+            if (event instanceof ObjectNode redemption && redemption.has("redeemed_at")) {
+                redemption.put("id", UUID.randomUUID().toString());
+                redemption.put("redeemed_at", Instant.now().toString());
+            }
+            return node.toString();
+        } catch (IOException ex) {
+            return message;
+        }
+    }
+
+    private long period(double perSecond) {
+        if (perSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        return Math.max(1, (long) (1_000_000_000 / perSecond));
+    }
+
+}
@@ -0,0 +1,59 @@
+package net.notfab.ttvsi.loadtest.twitch;
+
+/**
+ * Token bucket behind the fake Helix {@code Ratelimit-*} headers.
+ * Like Twitch, the bucket holds {@code limit} points and refills continuously over a minute.
+ */
+public class HelixRateLimit {
+
+    private final int limit;
+    private final double refillPerNano;
+    private double tokens;
+    private long updated;
+
+    public HelixRateLimit(int limit) {
+        this.limit = limit;
+        this.refillPerNano = limit / 60_000_000_000.0;
+        this.tokens = limit;
+        this.updated = System.nanoTime();
+    }
+
+    /**
+     * Spend one point
+     *
+     * @return false if the bucket is empty and the request should get a 429
+     */
+    public synchronized boolean take() {
+        this.refill();
+        if (this.tokens < 1) {
+            return false;
+        }
+        this.tokens--;
+        return true;
+    }
+
+    public int getLimit() {
+        return this.limit;
+    }
+
+    public synchronized int getRemaining() {
+        this.refill();
+        return (int) this.tokens;
+    }
+
+    /**
+     * Epoch seconds at which the bucket is full again
+     */
+    public synchronized long getReset() {
+        this.refill();
+        long nanos = (long) ((this.limit - this.tokens) / this.refillPerNano);
+        return (System.currentTimeMillis() + nanos / 1_000_000 + 999) / 1000;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.limit, this.tokens + (now - this.updated) * this.refillPerNano);
+        this.updated = now;
+    }
+
+}
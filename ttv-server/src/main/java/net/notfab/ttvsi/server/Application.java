@@ -1,13 +1,23 @@
 package net.notfab.ttvsi.server;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class Application {
 
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
     }
 
+    @Bean
+    public TraceMetrics traceMetrics(MeterRegistry registry) {
+        return new TraceMetrics(registry);
+    }
+
 }
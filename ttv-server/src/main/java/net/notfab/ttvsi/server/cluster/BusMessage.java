@@ -0,0 +1,19 @@
+package net.notfab.ttvsi.server.cluster;
+
+import jakarta.annotation.Nullable;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WsCredentials;
+
+/**
+ * Envelope sent between nodes, forwarded client messages carry the sender's credentials.
+ * Presence changes carry the credentials of a client that connected to or disconnected from the origin, and no event.
+ */
+record BusMessage(String origin, String room, @Nullable NetworkEvent event, @Nullable WsCredentials credentials,
+                  @Nullable Presence presence) {
+
+    enum Presence {
+        OPEN,
+        CLOSED
+    }
+
+}
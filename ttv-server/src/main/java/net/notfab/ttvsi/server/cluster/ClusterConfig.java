@@ -0,0 +1,18 @@
+package net.notfab.ttvsi.server.cluster;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    public RoomBus roomBus(ClusterProperties properties) {
+        return switch (properties.getType()) {
+            case MEMORY -> new InMemoryRoomBus();
+            case TCP -> new TcpRoomBus(properties.getAddress(), properties.getPeers(), properties.getPeerQueueCapacity(),
+                    properties.getSecret());
+        };
+    }
+
+}
@@ -0,0 +1,40 @@
+package net.notfab.ttvsi.server.cluster;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties(prefix = "ttv.cluster")
+public class ClusterProperties {
+
+    private ClusterType type = ClusterType.MEMORY;
+
+    /**
+     * host:port other nodes use to reach this one, also the interface and port this node listens on
+     */
+    private String address = "localhost:5590";
+
+    /**
+     * Shared by every node, peers must prove they know it before their messages are accepted. Required for TCP
+     */
+    private String secret;
+
+    /**
+     * host:port of every other node, all nodes must agree on the full list for room ownership to match
+     */
+    private List<String> peers = new ArrayList<>();
+
+    /**
+     * Points per node on the ownership ring, more points spread rooms more evenly
+     */
+    private int virtualNodes = 128;
+
+    /**
+     * Maximum number of messages waiting to be sent to a single peer before new ones are dropped
+     */
+    private int peerQueueCapacity = 10_000;
+
+}
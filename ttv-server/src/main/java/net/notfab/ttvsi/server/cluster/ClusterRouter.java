@@ -0,0 +1,88 @@
+package net.notfab.ttvsi.server.cluster;
+
+import jakarta.annotation.PostConstruct;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardDeltaEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
+import net.notfab.ttvsi.server.models.Room;
+import net.notfab.ttvsi.server.services.RoomExecutor;
+import net.notfab.ttvsi.server.services.RoomRegistry;
+import net.notfab.ttvsi.server.websocket.BufferedWebSocketHandler;
+import net.notfab.ttvsi.server.websocket.NetEventDispatcher;
+import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies traffic from other nodes on the room's event loop, without blocking the bus reader on a busy loop.
+ * Broadcasts go to the members connected here, and reward changes are mirrored so rewards can be served locally.
+ * Forwarded client messages and presence changes are handled as if the client was connected to this node.
+ */
+@Component
+public class ClusterRouter implements RoomBusListener {
+
+    private final RoomBus bus;
+    private final RoomRegistry rooms;
+    private final RoomExecutor executor;
+    private final NetEventDispatcher dispatcher;
+    private final BufferedWebSocketHandler server;
+    private final ApplicationEventPublisher publisher;
+
+    public ClusterRouter(RoomBus bus, RoomRegistry rooms, RoomExecutor executor, NetEventDispatcher dispatcher,
+                         BufferedWebSocketHandler server, ApplicationEventPublisher publisher) {
+        this.bus = bus;
+        this.rooms = rooms;
+        this.executor = executor;
+        this.dispatcher = dispatcher;
+        this.server = server;
+        this.publisher = publisher;
+    }
+
+    @PostConstruct
+    public void subscribe() {
+        this.bus.subscribe(this);
+    }
+
+    @Override
+    public void onBroadcast(String room, NetworkEvent event) {
+        this.executor.enqueue(room, () -> {
+            this.mirror(room, event);
+            this.server.deliver(room, event);
+        });
+    }
+
+    @Override
+    public void onForward(WsMessageEvent event) {
+        String room = event.credentials().roomId();
+        this.executor.enqueue(room, () -> {
+            this.rooms.getOrCreate(room);
+            this.dispatcher.dispatch(event);
+        });
+    }
+
+    @Override
+    public void onForward(WsOpenEvent event) {
+        String room = event.credentials().roomId();
+        this.executor.enqueue(room, () -> {
+            this.rooms.getOrCreate(room);
+            this.publisher.publishEvent(event);
+        });
+    }
+
+    @Override
+    public void onForward(WsClosedEvent event) {
+        this.executor.enqueue(event.credentials().roomId(), () -> this.publisher.publishEvent(event));
+    }
+
+    private void mirror(String roomId, NetworkEvent event) {
+        Room room = this.rooms.getOrCreate(roomId);
+        if (event instanceof RewardSyncEvent sync) {
+            room.restoreRewards(sync.rewards(), sync.version());
+        } else if (event instanceof RewardDeltaEvent delta) {
+            room.applyRewardDelta(delta.upserted(), delta.removed(), delta.version());
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package net.notfab.ttvsi.server.cluster;
+
+public enum ClusterType {
+    /**
+     * Nodes in the same JVM, a single node by default
+     */
+    MEMORY,
+    /**
+     * Nodes connected to each other over TCP
+     */
+    TCP
+}
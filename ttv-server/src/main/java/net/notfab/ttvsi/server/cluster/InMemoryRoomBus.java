@@ -0,0 +1,92 @@
+package net.notfab.ttvsi.server.cluster;
+
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connects nodes living in the same JVM through a shared map, with a single node this delivers nothing.
+ */
+public class InMemoryRoomBus implements RoomBus {
+
+    private final String nodeId;
+    private final Map<String, InMemoryRoomBus> network;
+    private final List<RoomBusListener> listeners = new CopyOnWriteArrayList<>();
+
+    public InMemoryRoomBus() {
+        this("local", new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param network shared by every node that should see each other
+     */
+    public InMemoryRoomBus(String nodeId, Map<String, InMemoryRoomBus> network) {
+        this.nodeId = nodeId;
+        this.network = network;
+        this.network.put(nodeId, this);
+    }
+
+    @Override
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    @Override
+    public Collection<String> getNodes() {
+        return new TreeSet<>(this.network.keySet());
+    }
+
+    @Override
+    public void publish(String room, NetworkEvent event) {
+        this.network.forEach((id, node) -> {
+            if (!id.equals(this.nodeId)) {
+                node.listeners.forEach(listener -> listener.onBroadcast(room, event));
+            }
+        });
+    }
+
+    @Override
+    public boolean forward(String node, WsMessageEvent event) {
+        InMemoryRoomBus target = this.network.get(node);
+        if (target == null) {
+            return false;
+        }
+        target.listeners.forEach(listener -> listener.onForward(event));
+        return true;
+    }
+
+    @Override
+    public void forward(String node, WsOpenEvent event) {
+        InMemoryRoomBus target = this.network.get(node);
+        if (target != null) {
+            target.listeners.forEach(listener -> listener.onForward(event));
+        }
+    }
+
+    @Override
+    public void forward(String node, WsClosedEvent event) {
+        InMemoryRoomBus target = this.network.get(node);
+        if (target != null) {
+            target.listeners.forEach(listener -> listener.onForward(event));
+        }
+    }
+
+    @Override
+    public void subscribe(RoomBusListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public long getDropped() {
+        return 0;
+    }
+
+}
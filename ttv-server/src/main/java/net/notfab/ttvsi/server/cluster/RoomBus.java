@@ -0,0 +1,54 @@
+package net.notfab.ttvsi.server.cluster;
+
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
+
+import java.util.Collection;
+
+/**
+ * Carries room traffic between server nodes, so a room can have members connected to any node.
+ */
+public interface RoomBus {
+
+    /**
+     * Identifier of this node, also used as its position on the ownership ring
+     */
+    String getNodeId();
+
+    /**
+     * Every known node, including this one
+     */
+    Collection<String> getNodes();
+
+    /**
+     * Deliver a room broadcast to every other node
+     */
+    void publish(String room, NetworkEvent event);
+
+    /**
+     * Hand a client message to the node that owns its room
+     *
+     * @return false if the message could not be queued for that node and was dropped
+     */
+    boolean forward(String node, WsMessageEvent event);
+
+    /**
+     * Hand a client that connected to this node to the node that owns its room, which keeps the room's members
+     */
+    void forward(String node, WsOpenEvent event);
+
+    /**
+     * Hand a client that disconnected from this node to the node that owns its room
+     */
+    void forward(String node, WsClosedEvent event);
+
+    void subscribe(RoomBusListener listener);
+
+    /**
+     * Messages dropped because their node was unknown, could not keep up or its connection was lost
+     */
+    long getDropped();
+
+}
@@ -0,0 +1,30 @@
+package net.notfab.ttvsi.server.cluster;
+
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
+
+public interface RoomBusListener {
+
+    /**
+     * Another node broadcast an event to a room
+     */
+    void onBroadcast(String room, NetworkEvent event);
+
+    /**
+     * Another node forwarded a client message to this node, as the owner of its room
+     */
+    void onForward(WsMessageEvent event);
+
+    /**
+     * A client connected to another node, in a room owned by this node
+     */
+    void onForward(WsOpenEvent event);
+
+    /**
+     * A client disconnected from another node, in a room owned by this node
+     */
+    void onForward(WsClosedEvent event);
+
+}
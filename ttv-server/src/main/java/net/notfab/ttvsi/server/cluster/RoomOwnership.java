@@ -0,0 +1,98 @@
+package net.notfab.ttvsi.server.cluster;
+
+import net.notfab.ttvsi.common.NetEvent;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Assigns every room to a single node with a consistent hash ring, so state that must have one writer
+ * (poll tallies, reward versions) is only ever changed on the owner. Adding or removing a node only moves
+ * the rooms next to it on the ring.
+ */
+@Component
+public class RoomOwnership {
+
+    /**
+     * Client messages that change room state and must be handled on the room's owner
+     */
+    private static final Set<NetEvent> OWNED_EVENTS = EnumSet.of(
+            NetEvent.CLIENT_CREATE_POLL,
+            NetEvent.CLIENT_POLL_PROGRESS,
+            NetEvent.CLIENT_POLL_FINISHED,
+            NetEvent.CLIENT_CREATE_REWARD,
+            NetEvent.CLIENT_DELETE_REWARD,
+            NetEvent.CLIENT_UPDATE_REWARDS,
+            NetEvent.CLIENT_REQUEST_REWARD_SYNC
+    );
+
+    private final RoomBus bus;
+    private final int virtualNodes;
+    private volatile Ring ring;
+
+    public RoomOwnership(RoomBus bus, ClusterProperties properties) {
+        this.bus = bus;
+        this.virtualNodes = properties.getVirtualNodes();
+        this.ring = new Ring(List.copyOf(bus.getNodes()), this.virtualNodes);
+    }
+
+    public String ownerOf(String room) {
+        return this.getRing().ownerOf(room);
+    }
+
+    public boolean isOwner(String room) {
+        return this.ownerOf(room).equals(this.bus.getNodeId());
+    }
+
+    public boolean isOwnedEvent(NetEvent event) {
+        return OWNED_EVENTS.contains(event);
+    }
+
+    /**
+     * Rebuild the ring when the bus reports a different set of nodes
+     */
+    private Ring getRing() {
+        Ring current = this.ring;
+        List<String> nodes = List.copyOf(this.bus.getNodes());
+        if (!current.nodes.equals(nodes)) {
+            current = new Ring(nodes, this.virtualNodes);
+            this.ring = current;
+        }
+        return current;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+
+    private static final class Ring {
+
+        private final List<String> nodes;
+        private final TreeMap<Long, String> points = new TreeMap<>();
+
+        private Ring(List<String> nodes, int virtualNodes) {
+            this.nodes = nodes;
+            for (String node : nodes) {
+                for (int i = 0; i < virtualNodes; i++) {
+                    this.points.put(hash(node + "#" + i), node);
+                }
+            }
+        }
+
+        private String ownerOf(String room) {
+            Map.Entry<Long, String> entry = this.points.ceilingEntry(hash(room));
+            return entry != null ? entry.getValue() : this.points.firstEntry().getValue();
+        }
+
+    }
+
+}
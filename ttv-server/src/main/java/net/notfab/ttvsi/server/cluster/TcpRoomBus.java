@@ -0,0 +1,330 @@
+package net.notfab.ttvsi.server.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connects nodes with one outbound TCP connection per peer.
+ * Messages are length prefixed JSON, each peer has its own bounded queue drained by a virtual thread that reconnects
+ * on failure, so a slow or missing peer never blocks room event loops.
+ * <p>
+ * Forwarded messages act on behalf of clients, so inbound connections must answer a random challenge with its
+ * HMAC under the cluster secret before anything they send is read.
+ */
+@Slf4j
+public class TcpRoomBus implements RoomBus, AutoCloseable {
+
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    private static final long RECONNECT_DELAY = TimeUnit.SECONDS.toMillis(1);
+    private static final int HANDSHAKE_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(5);
+    private static final int CHALLENGE_SIZE = 32;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final String nodeId;
+    private final Set<String> nodes = new TreeSet<>();
+    private final Map<String, Peer> peers = new HashMap<>();
+    private final List<RoomBusListener> listeners = new CopyOnWriteArrayList<>();
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder dropped = new LongAdder();
+    private final SecretKeySpec secret;
+    private final ServerSocket server;
+    private volatile boolean running = true;
+
+    public TcpRoomBus(String address, List<String> peers, int queueCapacity, String secret) {
+        if (secret == null || secret.isBlank()) {
+            throw new IllegalArgumentException("ttv.cluster.secret is required for TCP clusters");
+        }
+        this.nodeId = address;
+        this.nodes.add(address);
+        this.nodes.addAll(peers);
+        this.secret = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        try {
+            this.server = new ServerSocket();
+            this.server.bind(parse(address));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to listen for peers on " + address, e);
+        }
+        Thread.ofVirtual().name("bus-accept").start(this::accept);
+        for (String peer : peers) {
+            Peer connection = new Peer(peer, queueCapacity);
+            this.peers.put(peer, connection);
+            Thread.ofVirtual().name("bus-peer-" + peer).start(connection::run);
+        }
+        log.info("Room bus listening on {} with {} peers", address, peers.size());
+    }
+
+    @Override
+    public String getNodeId() {
+        return this.nodeId;
+    }
+
+    @Override
+    public Collection<String> getNodes() {
+        return this.nodes;
+    }
+
+    @Override
+    public void publish(String room, NetworkEvent event) {
+        if (this.peers.isEmpty()) {
+            return;
+        }
+        byte[] message = this.encode(new BusMessage(this.nodeId, room, event, null, null));
+        if (message != null) {
+            this.peers.values().forEach(peer -> peer.offer(message));
+        }
+    }
+
+    @Override
+    public boolean forward(String node, WsMessageEvent event) {
+        WsCredentials credentials = event.credentials();
+        return this.send(node, new BusMessage(this.nodeId, credentials.roomId(), event.payload(), credentials, null));
+    }
+
+    @Override
+    public void forward(String node, WsOpenEvent event) {
+        WsCredentials credentials = event.credentials();
+        this.send(node, new BusMessage(this.nodeId, credentials.roomId(), null, credentials, BusMessage.Presence.OPEN));
+    }
+
+    @Override
+    public void forward(String node, WsClosedEvent event) {
+        WsCredentials credentials = event.credentials();
+        this.send(node, new BusMessage(this.nodeId, credentials.roomId(), null, credentials, BusMessage.Presence.CLOSED));
+    }
+
+    @Override
+    public void subscribe(RoomBusListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        try {
+            this.server.close();
+        } catch (IOException ex) {
+            // Shutting down anyway
+        }
+        this.peers.values().forEach(Peer::close);
+    }
+
+    private void accept() {
+        while (this.running) {
+            try {
+                Socket socket = this.server.accept();
+                Thread.ofVirtual().name("bus-inbound-" + socket.getRemoteSocketAddress()).start(() -> this.read(socket));
+            } catch (IOException ex) {
+                if (this.running) {
+                    log.error("Failed to accept peer connection", ex);
+                }
+            }
+        }
+    }
+
+    private void read(Socket socket) {
+        try (socket; DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            if (!this.authenticate(socket, input)) {
+                log.warn("Rejected peer {}, it does not know the cluster secret", socket.getRemoteSocketAddress());
+                return;
+            }
+            while (this.running) {
+                int length = input.readInt();
+                if (length <= 0 || length > MAX_MESSAGE_SIZE) {
+                    log.warn("Closing peer {} after invalid message length {}", socket.getRemoteSocketAddress(), length);
+                    return;
+                }
+                byte[] data = new byte[length];
+                input.readFully(data);
+                this.deliver(this.mapper.readValue(data, BusMessage.class));
+            }
+        } catch (EOFException ex) {
+            log.debug("Peer {} disconnected", socket.getRemoteSocketAddress());
+        } catch (IOException ex) {
+            log.warn("Lost inbound connection from {}", socket.getRemoteSocketAddress(), ex);
+        }
+    }
+
+    /**
+     * Challenge an inbound connection, it must answer with the HMAC of a random challenge
+     */
+    private boolean authenticate(Socket socket, DataInputStream input) throws IOException {
+        byte[] challenge = new byte[CHALLENGE_SIZE];
+        this.random.nextBytes(challenge);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        OutputStream output = socket.getOutputStream();
+        output.write(challenge);
+        output.flush();
+        byte[] answer = new byte[CHALLENGE_SIZE];
+        input.readFully(answer);
+        socket.setSoTimeout(0);
+        return MessageDigest.isEqual(answer, this.sign(challenge));
+    }
+
+    private byte[] sign(byte[] challenge) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(this.secret);
+            return mac.doFinal(challenge);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    /**
+     * @return false if the message was dropped
+     */
+    private boolean send(String node, BusMessage message) {
+        Peer peer = this.peers.get(node);
+        if (peer == null) {
+            this.dropped.increment();
+            log.warn("Dropped message for room {} to unknown node {}", message.room(), node);
+            return false;
+        }
+        byte[] data = this.encode(message);
+        return data != null && peer.offer(data);
+    }
+
+    private void deliver(BusMessage message) {
+        if (message.presence() == BusMessage.Presence.OPEN) {
+            WsOpenEvent event = new WsOpenEvent(message.credentials());
+            this.listeners.forEach(listener -> listener.onForward(event));
+        } else if (message.presence() == BusMessage.Presence.CLOSED) {
+            WsClosedEvent event = new WsClosedEvent(message.credentials());
+            this.listeners.forEach(listener -> listener.onForward(event));
+        } else if (message.credentials() != null) {
+            WsMessageEvent event = new WsMessageEvent(message.credentials(), message.event().getType(), message.event());
+            this.listeners.forEach(listener -> listener.onForward(event));
+        } else {
+            this.listeners.forEach(listener -> listener.onBroadcast(message.room(), message.event()));
+        }
+    }
+
+    private byte[] encode(BusMessage message) {
+        try {
+            return this.mapper.writeValueAsBytes(message);
+        } catch (IOException ex) {
+            log.error("Failed to encode message for room {}", message.room(), ex);
+            return null;
+        }
+    }
+
+    private static InetSocketAddress parse(String address) {
+        int separator = address.lastIndexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected host:port but got " + address);
+        }
+        return new InetSocketAddress(address.substring(0, separator), Integer.parseInt(address.substring(separator + 1)));
+    }
+
+    /**
+     * Outbound connection to a single peer
+     */
+    private class Peer {
+
+        private final String address;
+        private final BlockingQueue<byte[]> queue;
+        private volatile Socket socket;
+
+        private Peer(String address, int capacity) {
+            this.address = address;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /**
+         * @return false if the queue is full and the message was dropped
+         */
+        private boolean offer(byte[] message) {
+            if (this.queue.offer(message)) {
+                return true;
+            }
+            dropped.increment();
+            log.warn("Dropped message for peer {}, queue is full ({} dropped so far)", this.address, dropped.sum());
+            return false;
+        }
+
+        private void run() {
+            while (running) {
+                // Messages taken from the queue but not flushed yet, lost with the connection
+                int inFlight = 0;
+                try (Socket socket = new Socket()) {
+                    socket.connect(parse(this.address));
+                    socket.setTcpNoDelay(true);
+                    this.socket = socket;
+                    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    // Prove we know the cluster secret before sending anything
+                    socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+                    byte[] challenge = new byte[CHALLENGE_SIZE];
+                    new DataInputStream(socket.getInputStream()).readFully(challenge);
+                    output.write(sign(challenge));
+                    output.flush();
+                    socket.setSoTimeout(0);
+                    log.info("Connected to peer {}", this.address);
+                    while (running) {
+                        byte[] message = this.queue.take();
+                        do {
+                            inFlight++;
+                            output.writeInt(message.length);
+                            output.write(message);
+                        } while ((message = this.queue.poll()) != null);
+                        output.flush();
+                        inFlight = 0;
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                } catch (IOException ex) {
+                    if (running) {
+                        // Part of the batch may have reached the peer, resending could deliver it twice
+                        dropped.add(inFlight);
+                        log.warn("Lost connection to peer {}, dropped {} in-flight messages, retrying",
+                                this.address, inFlight);
+                    }
+                }
+                try {
+                    Thread.sleep(RECONNECT_DELAY);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+
+        private void close() {
+            Socket socket = this.socket;
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException ex) {
+                    // Shutting down anyway
+                }
+            }
+        }
+
+    }
+
+}
@@ -1,8 +1,7 @@
 package net.notfab.ttvsi.server.listeners;
 
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import net.jodah.expiringmap.ExpirationListener;
-import net.jodah.expiringmap.ExpiringMap;
 import net.notfab.ttvsi.common.NetEvent;
 import net.notfab.ttvsi.common.WsCredentials;
 import net.notfab.ttvsi.common.polls.Poll;
@@ -12,39 +11,58 @@ import net.notfab.ttvsi.common.polls.client.ClientRequestedPollCreateEvent;
 import net.notfab.ttvsi.common.polls.server.ServerCreatePollEvent;
 import net.notfab.ttvsi.common.polls.server.ServerPollFinishedEvent;
 import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
+import net.notfab.ttvsi.server.models.PollPhase;
+import net.notfab.ttvsi.server.models.Room;
 import net.notfab.ttvsi.server.models.PollState;
+import net.notfab.ttvsi.server.services.PollProperties;
+import net.notfab.ttvsi.server.services.PollRegistry;
+import net.notfab.ttvsi.server.services.RoomExecutor;
+import net.notfab.ttvsi.server.services.RoomRegistry;
+import net.notfab.ttvsi.server.services.RoomStateService;
+import net.notfab.ttvsi.server.store.PollRecord;
 import net.notfab.ttvsi.server.websocket.BufferedWebSocketHandler;
+import net.notfab.ttvsi.server.websocket.NetHandler;
+import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
 import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 @Service
-public class PollListener implements ExpirationListener<String, Integer> {
+public class PollListener {
 
-    private final ExpiringMap<String, Integer> running = ExpiringMap.builder()
-            .variableExpiration()
-            .expirationListener(this)
-            .build();
-    private final Map<String, PollState> polls = new HashMap<>();
     private final BufferedWebSocketHandler server;
+    private final RoomExecutor executor;
+    private final PollRegistry polls;
+    private final RoomRegistry rooms;
+    private final RoomStateService roomState;
+    private final long updateInterval;
 
-    public PollListener(BufferedWebSocketHandler server) {
+    private final LongAdder updatesReceived = new LongAdder();
+    private final LongAdder updatesBroadcast = new LongAdder();
+
+    public PollListener(BufferedWebSocketHandler server, RoomExecutor executor, PollRegistry polls,
+                        RoomRegistry rooms, RoomStateService roomState, PollProperties properties) {
         this.server = server;
+        this.executor = executor;
+        this.polls = polls;
+        this.rooms = rooms;
+        this.roomState = roomState;
+        this.updateInterval = properties.getUpdateInterval().toNanos();
     }
 
     /**
      * Poll was requested by a connected client
      */
-    @EventListener
+    @NetHandler(NetEvent.CLIENT_CREATE_POLL)
     public void onPollCreated(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.CLIENT_CREATE_POLL)) {
-            return;
-        }
         WsCredentials credentials = event.credentials();
         if (credentials == null) {
             return;
@@ -54,24 +72,42 @@ public class PollListener implements ExpirationListener<String, Integer> {
             return;
         }
         Poll poll = payload.poll();
-        if (this.polls.containsKey(poll.getId())) {
+        PollState state = this.polls.create(poll, credentials.roomId());
+        if (state == null) {
             log.warn("Prevented creation of duplicate poll with id {}", poll.getId());
             return;
         }
-        this.polls.put(poll.getId(), new PollState(poll.getId(), credentials.roomId()));
         this.server.broadcast(credentials.roomId(), new ServerCreatePollEvent(poll.getId(), poll));
-        this.running.put(poll.getId(), 0, poll.getDuration() + 2, TimeUnit.SECONDS);
+        state.addParticipants(this.getMembers(credentials.roomId()));
+        this.polls.start(state, System.currentTimeMillis() + poll.getDuration() * 1000L, this::finish);
+        this.roomState.savePoll(state);
         log.info("Poll {} created", poll.getId());
     }
 
     /**
-     * Poll had a progress update on a client
+     * Resume polls that were running before a restart, finishing them right away if they already ended
      */
-    @EventListener
-    private void onPollProgress(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.CLIENT_POLL_PROGRESS)) {
-            return;
+    @PostConstruct
+    public void restore() {
+        for (PollRecord record : this.roomState.takeRestoredPolls()) {
+            this.executor.execute(record.room(), () -> {
+                PollState state = this.polls.create(record.poll(), record.room());
+                if (state == null) {
+                    return;
+                }
+                record.votes().forEach(state::setVotes);
+                state.addParticipants(record.votes().keySet());
+                this.polls.start(state, record.deadline(), this::finish);
+                log.info("Poll {} restored", state.getId());
+            });
         }
+    }
+
+    /**
+     * Poll had a progress update on a client
+     */
+    @NetHandler(NetEvent.CLIENT_POLL_PROGRESS)
+    public void onPollProgress(WsMessageEvent event) {
         WsCredentials credentials = event.credentials();
         if (credentials == null) {
             return;
@@ -80,24 +116,22 @@ public class PollListener implements ExpirationListener<String, Integer> {
         if (payload == null) {
             return;
         }
-        PollState state = this.polls.get(payload.id());
+        PollState state = this.getRunning(payload.id(), credentials.roomId());
         if (state == null) {
-            log.warn("Invalid poll {}", payload.id());
             return;
         }
         state.setVotes(credentials.twitchId(), payload.votes());
-        this.server.broadcast(credentials.roomId(), new ServerPollUpdateEvent(state.getId(), state.getResults()));
+        state.addParticipants(List.of(credentials.twitchId()));
+        this.updatesReceived.increment();
+        this.scheduleUpdate(state);
         log.info("Poll {} had a progress update on channel {}", payload.id(), credentials.twitchId());
     }
 
     /**
      * Poll finished on a client
      */
-    @EventListener
-    private void onPollFinished(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.CLIENT_POLL_FINISHED)) {
-            return;
-        }
+    @NetHandler(NetEvent.CLIENT_POLL_FINISHED)
+    public void onPollFinished(WsMessageEvent event) {
         WsCredentials credentials = event.credentials();
         if (credentials == null) {
             return;
@@ -106,24 +140,113 @@ public class PollListener implements ExpirationListener<String, Integer> {
         if (payload == null) {
             return;
         }
-        PollState state = this.polls.get(payload.id());
+        PollState state = this.getRunning(payload.id(), credentials.roomId());
         if (state == null) {
-            log.warn("Invalid poll {}", payload.id());
             return;
         }
         state.setVotes(credentials.twitchId(), payload.votes());
+        state.markFinished(credentials.twitchId());
+        this.scheduleUpdate(state);
         log.info("Poll {} finished on channel {}", payload.id(), credentials.twitchId());
+        // Finalize right away once every channel reported, the timer stays as a fallback
+        if (state.isComplete(this.getMembers(state.getRoom()))) {
+            this.finish(state);
+        }
     }
 
-    @Override
-    public void expired(String poll, Integer expiry) {
-        PollState state = this.polls.get(poll);
-        if (state == null) {
+    /**
+     * A channel leaving may be the last one a poll was waiting on
+     */
+    @EventListener
+    public void onDisconnected(WsClosedEvent event) {
+        WsCredentials credentials = event.credentials();
+        if (credentials == null) {
+            return;
+        }
+        // Room membership may not be updated yet depending on listener order
+        Set<String> members = new HashSet<>(this.getMembers(credentials.roomId()));
+        members.remove(credentials.twitchId());
+        for (PollState state : this.polls.getPolls()) {
+            if (state.getRoom().equals(credentials.roomId()) && state.getPhase() == PollPhase.RUNNING
+                    && state.isComplete(members)) {
+                this.finish(state);
+            }
+        }
+    }
+
+    public long getUpdatesReceived() {
+        return this.updatesReceived.sum();
+    }
+
+    public long getUpdatesBroadcast() {
+        return this.updatesBroadcast.sum();
+    }
+
+    private Set<String> getMembers(String roomId) {
+        Room room = this.rooms.get(roomId);
+        return room == null ? Set.of() : room.getMembersSnapshot();
+    }
+
+    /**
+     * Find a poll that still accepts votes, late reports for finalized or closed polls are dropped
+     */
+    private PollState getRunning(String id, String room) {
+        PollState state = this.polls.get(id);
+        if (state == null || !state.getRoom().equals(room)) {
+            log.warn("Invalid poll {}", id);
+            return null;
+        }
+        if (state.getPhase() != PollPhase.RUNNING) {
+            log.debug("Ignored late report for poll {} in phase {}", id, state.getPhase());
+            return null;
+        }
+        return state;
+    }
+
+    /**
+     * Broadcast the final results of a poll, runs on the room's event loop
+     */
+    private void finish(PollState state) {
+        if (!state.transition(PollPhase.RUNNING, PollPhase.FINALIZING)) {
             return;
         }
+        state.setDirty(false);
         Map<String, Integer> results = state.getResults();
-        log.info("Poll {} expired, results: {}", poll, results);
-        this.server.broadcast(state.getRoom(), new ServerPollFinishedEvent(poll, results));
+        log.info("Poll {} finished, results: {}", state.getId(), results);
+        this.server.broadcast(state.getRoom(), new ServerPollFinishedEvent(state.getId(), results));
+        this.polls.close(state);
+        this.roomState.removePoll(state.getId());
+    }
+
+    /**
+     * Broadcast and persist the tally at most once per update interval, a trailing flush carries the latest votes.
+     * Snapshots copy every channel's votes, so they are never taken per report.
+     * Must run on the room's event loop.
+     */
+    private void scheduleUpdate(PollState state) {
+        state.setDirty(true);
+        if (state.isFlushPending()) {
+            return;
+        }
+        long wait = state.getLastUpdate() == 0 ? 0 : state.getLastUpdate() + this.updateInterval - System.nanoTime();
+        if (wait <= 0) {
+            this.flushUpdate(state);
+            return;
+        }
+        state.setFlushPending(true);
+        this.executor.schedule(state.getRoom(), Duration.ofNanos(wait), () -> this.flushUpdate(state));
+    }
+
+    private void flushUpdate(PollState state) {
+        state.setFlushPending(false);
+        if (!state.isDirty() || state.getPhase() != PollPhase.RUNNING) {
+            return;
+        }
+        state.setDirty(false);
+        state.setLastUpdate(System.nanoTime());
+        this.server.broadcast(state.getRoom(), new ServerPollUpdateEvent(state.getId(), state.getResults()));
+        this.updatesBroadcast.increment();
+        this.roomState.savePoll(state);
     }
 
 }
@@ -3,14 +3,18 @@ package net.notfab.ttvsi.server.listeners;
 import lombok.extern.slf4j.Slf4j;
 import net.notfab.ttvsi.common.NetEvent;
 import net.notfab.ttvsi.common.WsCredentials;
-import net.notfab.ttvsi.common.rewards.Reward;
+import net.notfab.ttvsi.common.rewards.RewardRedeemEvent;
 import net.notfab.ttvsi.common.rewards.client.ClientCreateRewardEvent;
 import net.notfab.ttvsi.common.rewards.client.ClientDeleteRewardEvent;
 import net.notfab.ttvsi.common.rewards.client.ClientUpdateRewardsEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardDeltaEvent;
 import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
 import net.notfab.ttvsi.server.models.Room;
 import net.notfab.ttvsi.server.services.RoomManager;
+import net.notfab.ttvsi.server.services.RoomStateService;
 import net.notfab.ttvsi.server.websocket.BufferedWebSocketHandler;
+import net.notfab.ttvsi.server.websocket.NetHandler;
 import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
 import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
 import org.springframework.context.event.EventListener;
@@ -24,14 +28,19 @@ public class RewardListener {
 
     private final BufferedWebSocketHandler server;
     private final RoomManager rooms;
+    private final RoomStateService roomState;
+    private final TraceMetrics traces;
 
-    public RewardListener(BufferedWebSocketHandler server, RoomManager rooms) {
+    public RewardListener(BufferedWebSocketHandler server, RoomManager rooms, RoomStateService roomState,
+                          TraceMetrics traces) {
         this.server = server;
         this.rooms = rooms;
+        this.roomState = roomState;
+        this.traces = traces;
     }
 
     /**
-     * User connected, push rewards state
+     * User connected, push rewards state. Runs on the room's owner
      */
     @EventListener
     public void onConnected(WsOpenEvent event) {
@@ -39,33 +48,38 @@ public class RewardListener {
         if (credentials == null) {
             return;
         }
-        Room room = this.rooms.get(credentials.roomId());
-        if (room == null) {
+        this.sendSnapshot(credentials);
+    }
+
+    /**
+     * Client missed a reward delta, send it the full state. Runs on the room's owner
+     */
+    @NetHandler(NetEvent.CLIENT_REQUEST_REWARD_SYNC)
+    public void onSyncRequest(WsMessageEvent event) {
+        WsCredentials credentials = event.credentials();
+        if (credentials == null) {
             return;
         }
-        this.server.send(credentials.clientId(), new RewardSyncEvent(room.getRewards()));
+        this.sendSnapshot(credentials);
     }
 
     /**
      * Reward was redeemed on a client, re-publish it to all clients
      */
-    @EventListener
+    @NetHandler(NetEvent.REWARD_REDEEMED)
     public void onRedeem(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.REWARD_REDEEMED)) {
-            return;
-        }
         WsCredentials credentials = event.credentials();
+        if (event.payload() instanceof RewardRedeemEvent redeem) {
+            this.traces.hop(redeem, TraceMetrics.SERVER_BROADCAST);
+        }
         this.server.broadcast(credentials.roomId(), event.payload());
     }
 
     /**
      * Reward was created on a client, register it and publish to everyone
      */
-    @EventListener
+    @NetHandler(NetEvent.CLIENT_CREATE_REWARD)
     public void onCreate(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.CLIENT_CREATE_REWARD)) {
-            return;
-        }
         WsCredentials credentials = event.credentials();
         if (credentials == null) {
             return;
@@ -78,21 +92,17 @@ public class RewardListener {
         if (payload == null) {
             return;
         }
-        List<Reward> rewards = room.getRewards();
-        rewards.add(payload.reward());
-        room.setRewards(rewards);
-        this.server.broadcast(room.getId(), new RewardSyncEvent(room.getRewards()));
+        long version = room.putReward(payload.reward());
+        this.roomState.saveRoom(room);
+        this.server.broadcast(room.getId(), new RewardDeltaEvent(version, List.of(payload.reward()), List.of()));
         log.info("Reward {} was created by {} on {}", payload.reward(), payload.channel(), room.getId());
     }
 
     /**
      * Reward was deleted on a client, register it and publish to everyone
      */
-    @EventListener
+    @NetHandler(NetEvent.CLIENT_DELETE_REWARD)
     public void onDelete(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.CLIENT_DELETE_REWARD)) {
-            return;
-        }
         WsCredentials credentials = event.credentials();
         if (credentials == null) {
             return;
@@ -105,22 +115,20 @@ public class RewardListener {
         if (payload == null) {
             return;
         }
-        List<Reward> rewards = room.getRewards().stream()
-                .filter(reward -> !reward.getId().equals(payload.reward()))
-                .toList();
-        room.setRewards(rewards);
-        this.server.broadcast(room.getId(), new RewardSyncEvent(room.getRewards()));
+        long version = room.removeReward(payload.reward());
+        if (version < 0) {
+            return;
+        }
+        this.roomState.saveRoom(room);
+        this.server.broadcast(room.getId(), new RewardDeltaEvent(version, List.of(), List.of(payload.reward())));
         log.info("Reward {} was deleted by {} on {}", payload.reward(), payload.channel(), room.getId());
     }
 
     /**
      * Reward list was updated by a client, replace all and publish to everyone
      */
-    @EventListener
+    @NetHandler(NetEvent.CLIENT_UPDATE_REWARDS)
     public void onUpdate(WsMessageEvent event) {
-        if (!event.event().equals(NetEvent.CLIENT_UPDATE_REWARDS)) {
-            return;
-        }
         WsCredentials credentials = event.credentials();
         if (credentials == null) {
             return;
@@ -134,8 +142,31 @@ public class RewardListener {
             return;
         }
         room.setRewards(payload.getRewards());
-        this.server.broadcast(room.getId(), new RewardSyncEvent(room.getRewards()));
+        this.roomState.saveRoom(room);
+        this.server.broadcast(room.getId(), this.snapshot(room));
         log.info("Rewards for {} were updated by {} ({})", room.getId(), payload.getChannel(), payload.getRewards().size());
     }
 
+    /**
+     * Send the owner's rewards to a client, a room that was never seeded has nothing to say and sends nothing,
+     * otherwise clients would reconcile twitch against an empty list.
+     * Clients connected to another node get the snapshot through a room broadcast, it is idempotent for everyone else.
+     */
+    private void sendSnapshot(WsCredentials credentials) {
+        Room room = this.rooms.get(credentials.roomId());
+        if (room == null || !room.isSeeded()) {
+            log.debug("No rewards known for {} yet, skipped snapshot for {}", credentials.roomId(), credentials.twitchId());
+            return;
+        }
+        if (this.server.isConnected(credentials.clientId())) {
+            this.server.send(credentials.clientId(), this.snapshot(room));
+        } else {
+            this.server.broadcast(room.getId(), this.snapshot(room));
+        }
+    }
+
+    private RewardSyncEvent snapshot(Room room) {
+        return new RewardSyncEvent(room.getRewards(), room.getRewardVersion());
+    }
+
 }
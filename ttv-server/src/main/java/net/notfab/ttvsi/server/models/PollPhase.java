@@ -0,0 +1,25 @@
+package net.notfab.ttvsi.server.models;
+
+/**
+ * Lifecycle of a poll on the server, phases only move forward.
+ */
+public enum PollPhase {
+
+    /**
+     * Registered but not yet announced to the room
+     */
+    CREATED,
+    /**
+     * Announced and accepting votes from clients
+     */
+    RUNNING,
+    /**
+     * Final results are being computed and broadcast, votes are no longer accepted
+     */
+    FINALIZING,
+    /**
+     * Results were sent, state is kept until the retention period ends
+     */
+    CLOSED
+
+}
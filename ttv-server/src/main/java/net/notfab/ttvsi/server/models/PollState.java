@@ -1,32 +1,161 @@
 package net.notfab.ttvsi.server.models;
 
 import lombok.Getter;
+import lombok.Setter;
+import net.notfab.ttvsi.common.polls.Choice;
+import net.notfab.ttvsi.common.polls.Poll;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
 
-@Getter
+/**
+ * Running tally of a poll across every channel in a room.
+ * Totals are kept per choice and only adjusted by the difference when a channel reports new votes,
+ * so reading the results never walks the per-channel votes.
+ */
 public class PollState {
 
+    @Getter
     private final String id;
+    @Getter
     private final String room;
-    private final Map<String, Map<String, Integer>> votes = new HashMap<>();
+    @Getter
+    private final Poll poll;
 
-    public PollState(String id, String room) {
-        this.id = id;
+    private final String[] choices;
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final LongAdder[] totals;
+
+    // Last reported votes of each channel, indexed by choice ordinal
+    private final Map<String, int[]> votes = new ConcurrentHashMap<>();
+
+    // Lifecycle and update throttling, only touched on the room's event loop
+    @Getter
+    @Setter
+    private PollPhase phase = PollPhase.CREATED;
+    @Getter
+    @Setter
+    private ScheduledFuture<?> timer;
+    // Epoch millis at which the poll finishes, without the finish delay
+    @Getter
+    @Setter
+    private long deadline;
+    // Channels expected to report a final tally, and the ones that already did
+    private final Set<String> participants = new HashSet<>();
+    private final Set<String> finished = new HashSet<>();
+    @Getter
+    @Setter
+    private boolean dirty;
+    @Getter
+    @Setter
+    private boolean flushPending;
+    @Getter
+    @Setter
+    private long lastUpdate;
+
+    public PollState(Poll poll, String room) {
+        this.id = poll.getId();
         this.room = room;
+        this.poll = poll;
+        List<Choice> choices = poll.getChoices() == null ? List.of() : poll.getChoices();
+        this.choices = new String[choices.size()];
+        this.totals = new LongAdder[choices.size()];
+        for (int i = 0; i < choices.size(); i++) {
+            this.choices[i] = choices.get(i).getId();
+            this.ordinals.put(this.choices[i], i);
+            this.totals[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Move to the next phase if the poll is currently in the expected one
+     */
+    public boolean transition(PollPhase from, PollPhase to) {
+        if (this.phase != from) {
+            return false;
+        }
+        this.phase = to;
+        return true;
+    }
+
+    /**
+     * Expect a final tally from these channels, called when the poll starts and whenever a channel reports votes
+     */
+    public void addParticipants(Collection<String> channels) {
+        this.participants.addAll(channels);
+    }
+
+    /**
+     * Record the final tally of a channel
+     */
+    public void markFinished(String channel) {
+        this.participants.add(channel);
+        this.finished.add(channel);
+    }
+
+    /**
+     * True once every participant still present in the room has reported its final tally
+     */
+    public boolean isComplete(Set<String> members) {
+        if (this.finished.isEmpty()) {
+            return false;
+        }
+        for (String channel : this.participants) {
+            if (!this.finished.contains(channel) && members.contains(channel)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Immutable snapshot of the combined votes per choice id
+     */
+    public Map<String, Integer> getResults() {
+        Map<String, Integer> results = new LinkedHashMap<>();
+        for (int i = 0; i < this.choices.length; i++) {
+            results.put(this.choices[i], this.totals[i].intValue());
+        }
+        return Collections.unmodifiableMap(results);
     }
 
-    public synchronized Map<String, Integer> getResults() {
-        Map<String, Integer> totals = new HashMap<>();
-        this.votes.forEach((channel, votes) -> {
-            votes.forEach((id, total) -> totals.merge(id, total, Integer::sum));
+    /**
+     * Copy of the last votes reported by each channel
+     */
+    public Map<String, Map<String, Integer>> getChannelVotes() {
+        Map<String, Map<String, Integer>> copy = new HashMap<>();
+        this.votes.forEach((channel, current) -> {
+            Map<String, Integer> choices = new HashMap<>();
+            for (int i = 0; i < current.length; i++) {
+                choices.put(this.choices[i], current[i]);
+            }
+            copy.put(channel, choices);
         });
-        return totals;
+        return copy;
     }
 
-    public synchronized void setVotes(String channel, Map<String, Integer> votes) {
-        this.votes.put(channel, votes);
+    /**
+     * Replace the votes reported by a channel, applying only the difference to the totals
+     */
+    public void setVotes(String channel, Map<String, Integer> votes) {
+        int[] current = new int[this.choices.length];
+        if (votes != null) {
+            votes.forEach((choice, total) -> {
+                Integer ordinal = this.ordinals.get(choice);
+                if (ordinal != null && total != null) {
+                    current[ordinal] = total;
+                }
+            });
+        }
+        int[] previous = this.votes.put(channel, current);
+        for (int i = 0; i < current.length; i++) {
+            int delta = previous == null ? current[i] : current[i] - previous[i];
+            if (delta != 0) {
+                this.totals[i].add(delta);
+            }
+        }
     }
 
 }
@@ -4,16 +4,41 @@ import lombok.Getter;
 import net.notfab.ttvsi.common.rewards.Reward;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 
+/**
+ * Room state shared between the websocket handler and listeners.
+ * Reads never lock: rewards are replaced copy-on-write and connected clients are a copy-on-write set,
+ * so broadcasts iterate a stable snapshot while members join and leave.
+ * <p>
+ * Every reward change bumps the reward version, which clients use to apply deltas in order.
+ */
 public class Room {
 
     @Getter
     private final String id;
 
-    private final Map<String, Reward> rewards = new HashMap<>();
+    private volatile Map<String, Reward> rewards = Map.of();
 
     @Getter
-    private final Set<String> members = new HashSet<>();
+    private volatile long rewardVersion = 0;
+
+    // Whether rewards were ever set, restored or mirrored. An unseeded room knows nothing about its rewards
+    @Getter
+    private volatile boolean seeded = false;
+
+    // Twitch channels in this room
+    @Getter
+    private final Set<String> members = ConcurrentHashMap.newKeySet();
+
+    // Client IDs of connected sessions in this room
+    @Getter
+    private final Set<UUID> clients = new CopyOnWriteArraySet<>();
+
+    // Epoch millis of the last join, leave or broadcast
+    @Getter
+    private volatile long lastActivity = System.currentTimeMillis();
 
     public Room(String id) {
         this.id = id;
@@ -23,9 +48,83 @@ public class Room {
         return new ArrayList<>(this.rewards.values());
     }
 
-    public void setRewards(List<Reward> rewards) {
-        this.rewards.clear();
-        rewards.forEach(reward -> this.rewards.put(reward.getId(), reward));
+    /**
+     * Replace all rewards
+     *
+     * @return the new reward version
+     */
+    public synchronized long setRewards(List<Reward> rewards) {
+        Map<String, Reward> copy = new LinkedHashMap<>();
+        rewards.forEach(reward -> copy.put(reward.getId(), reward));
+        this.rewards = Collections.unmodifiableMap(copy);
+        this.seeded = true;
+        return ++this.rewardVersion;
+    }
+
+    /**
+     * Add or replace a single reward
+     *
+     * @return the new reward version
+     */
+    public synchronized long putReward(Reward reward) {
+        Map<String, Reward> copy = new LinkedHashMap<>(this.rewards);
+        copy.put(reward.getId(), reward);
+        this.rewards = Collections.unmodifiableMap(copy);
+        this.seeded = true;
+        return ++this.rewardVersion;
+    }
+
+    /**
+     * Remove a single reward
+     *
+     * @return the new reward version, or -1 if the reward did not exist
+     */
+    public synchronized long removeReward(String id) {
+        if (!this.rewards.containsKey(id)) {
+            return -1;
+        }
+        Map<String, Reward> copy = new LinkedHashMap<>(this.rewards);
+        copy.remove(id);
+        this.rewards = Collections.unmodifiableMap(copy);
+        return ++this.rewardVersion;
+    }
+
+    /**
+     * Restore rewards saved before a restart, keeping their version so clients can keep applying deltas
+     */
+    public synchronized void restoreRewards(List<Reward> rewards, long version) {
+        this.setRewards(rewards);
+        this.rewardVersion = version;
+    }
+
+    /**
+     * Apply a change made on another node, moving straight to its version
+     */
+    public synchronized void applyRewardDelta(List<Reward> upserted, List<String> removed, long version) {
+        Map<String, Reward> copy = new LinkedHashMap<>(this.rewards);
+        upserted.forEach(reward -> copy.put(reward.getId(), reward));
+        removed.forEach(copy::remove);
+        this.rewards = Collections.unmodifiableMap(copy);
+        this.seeded = true;
+        this.rewardVersion = version;
+    }
+
+    public void touch() {
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * True when no one is connected. Rewards are stored on every change and loaded back with the room
+     */
+    public boolean isDisposable() {
+        return this.clients.isEmpty() && this.members.isEmpty();
+    }
+
+    /**
+     * Point-in-time copy of the member list, safe to hand to serialization
+     */
+    public Set<String> getMembersSnapshot() {
+        return Set.copyOf(this.members);
     }
 
 }
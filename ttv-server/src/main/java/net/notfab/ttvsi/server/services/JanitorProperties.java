@@ -0,0 +1,27 @@
+package net.notfab.ttvsi.server.services;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "ttv.janitor")
+public class JanitorProperties {
+
+    /**
+     * Time between two sweeps
+     */
+    private Duration interval = Duration.ofMinutes(1);
+
+    /**
+     * Rooms and replay logs without connected clients are dropped after being idle this long
+     */
+    private Duration idleTtl = Duration.ofMinutes(10);
+
+    /**
+     * Upper bound for all replay logs combined, the least recently active rooms without clients are dropped first
+     */
+    private long maxReplayBytes = 64 * 1024 * 1024;
+
+}
@@ -0,0 +1,27 @@
+package net.notfab.ttvsi.server.services;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "ttv.polls")
+public class PollProperties {
+
+    /**
+     * Minimum time between two aggregated updates of the same poll, the latest tally is always flushed
+     */
+    private Duration updateInterval = Duration.ofMillis(250);
+
+    /**
+     * Extra time after a poll's duration for clients to report their final votes
+     */
+    private Duration finishDelay = Duration.ofSeconds(2);
+
+    /**
+     * How long a closed poll is kept around before its state is evicted
+     */
+    private Duration retention = Duration.ofSeconds(60);
+
+}
@@ -0,0 +1,89 @@
+package net.notfab.ttvsi.server.services;
+
+import jakarta.annotation.Nullable;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.common.polls.Poll;
+import net.notfab.ttvsi.server.models.PollPhase;
+import net.notfab.ttvsi.server.models.PollState;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Owns every poll and drives its lifecycle.
+ * Timers are scheduled on {@link RoomExecutor}, so finishing and evicting a poll runs on its room's event loop
+ * together with the votes being reported.
+ */
+@Slf4j
+@Service
+public class PollRegistry {
+
+    private final Map<String, PollState> polls = new ConcurrentHashMap<>();
+    private final RoomExecutor executor;
+    private final PollProperties properties;
+
+    public PollRegistry(RoomExecutor executor, PollProperties properties) {
+        this.executor = executor;
+        this.properties = properties;
+    }
+
+    /**
+     * Register a new poll, returns null if a poll with the same id already exists
+     */
+    public @Nullable PollState create(Poll poll, String room) {
+        PollState state = new PollState(poll, room);
+        if (this.polls.putIfAbsent(poll.getId(), state) != null) {
+            return null;
+        }
+        return state;
+    }
+
+    public @Nullable PollState get(String id) {
+        return this.polls.get(id);
+    }
+
+    /**
+     * Start accepting votes and arm the timer that finishes the poll once its deadline and finish delay are over.
+     * Must run on the room's event loop.
+     *
+     * @param deadline epoch millis at which the poll ends
+     */
+    public void start(PollState state, long deadline, Consumer<PollState> onFinish) {
+        if (!state.transition(PollPhase.CREATED, PollPhase.RUNNING)) {
+            return;
+        }
+        state.setDeadline(deadline);
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        Duration delay = Duration.ofMillis(remaining).plus(this.properties.getFinishDelay());
+        state.setTimer(this.executor.schedule(state.getRoom(), delay, () -> onFinish.accept(state)));
+    }
+
+    /**
+     * Mark a finished poll as closed and evict it after the retention period.
+     * Must run on the room's event loop.
+     */
+    public void close(PollState state) {
+        if (!state.transition(PollPhase.FINALIZING, PollPhase.CLOSED)) {
+            return;
+        }
+        if (state.getTimer() != null) {
+            state.getTimer().cancel(false);
+        }
+        state.setTimer(this.executor.schedule(state.getRoom(), this.properties.getRetention(), () -> this.evict(state)));
+    }
+
+    public Collection<PollState> getPolls() {
+        return this.polls.values();
+    }
+
+    private void evict(PollState state) {
+        if (this.polls.remove(state.getId(), state)) {
+            log.debug("Evicted poll {}", state.getId());
+        }
+    }
+
+}
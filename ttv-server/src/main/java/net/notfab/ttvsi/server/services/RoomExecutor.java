@@ -0,0 +1,155 @@
+package net.notfab.ttvsi.server.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Runs room events on a fixed set of single threaded event loops.
+ * A room is always pinned to the same loop, so everything touching a room's state runs on one thread
+ * in submission order, while different rooms spread across all loops.
+ * <p>
+ * A full loop blocks callers of {@link #execute}, which pushes back on the websocket threads reading from clients.
+ * Threads shared by every room (the timer, the cluster bus) use {@link #enqueue} instead and never block,
+ * so one busy room can't stall every other room's timers and bus traffic.
+ */
+@Slf4j
+@Service
+public class RoomExecutor {
+
+    private final Shard[] shards;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "room-timer"));
+
+    public RoomExecutor(RoomProperties properties) {
+        int count = properties.getShards() > 0 ? properties.getShards() : Runtime.getRuntime().availableProcessors();
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard("room-shard-" + i, properties.getShardQueueCapacity(), this::block);
+        }
+        log.info("Started {} room event loops", count);
+    }
+
+    /**
+     * Run a task on the event loop owning a room, blocking while the loop is full
+     */
+    public void execute(String roomId, Runnable task) {
+        this.shards[this.shardOf(roomId)].execute(this.guard(roomId, task));
+    }
+
+    /**
+     * Run a task on the event loop owning a room without ever blocking the caller.
+     * Tasks that don't fit wait in an unbounded overflow, in order, and are moved to the loop as it drains.
+     */
+    public void enqueue(String roomId, Runnable task) {
+        this.shards[this.shardOf(roomId)].offer(this.guard(roomId, task));
+    }
+
+    /**
+     * Run a task on the event loop owning a room after a delay
+     */
+    public ScheduledFuture<?> schedule(String roomId, Duration delay, Runnable task) {
+        return this.timer.schedule(() -> this.enqueue(roomId, task), delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public int shardOf(String roomId) {
+        return Math.floorMod(roomId.hashCode(), this.shards.length);
+    }
+
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    public int getQueueDepth(int shard) {
+        return this.shards[shard].getDepth();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.timer.shutdownNow();
+        for (Shard shard : this.shards) {
+            shard.shutdown();
+        }
+    }
+
+    private Runnable guard(String roomId, Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Exception ex) {
+                log.error("Uncaught error on room {}", roomId, ex);
+            }
+        };
+    }
+
+    /**
+     * Apply backpressure to the producer when a loop is full, dropping would break ordering
+     */
+    private void block(Runnable runnable, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Room event loop is shut down");
+        }
+        try {
+            executor.getQueue().put(runnable);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for room event loop", e);
+        }
+    }
+
+    /**
+     * A single room event loop with an overflow for callers that must not block
+     */
+    private static final class Shard extends ThreadPoolExecutor {
+
+        // Guarded by itself, drained into the loop's queue in order by producers and after every task
+        private final Queue<Runnable> overflow = new ArrayDeque<>();
+
+        private Shard(String name, int capacity, RejectedExecutionHandler handler) {
+            super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(capacity),
+                    runnable -> new Thread(runnable, name), handler);
+            // Overflow goes straight to the queue, the loop's thread must already be running
+            this.prestartAllCoreThreads();
+        }
+
+        private void offer(Runnable task) {
+            if (this.isShutdown()) {
+                throw new RejectedExecutionException("Room event loop is shut down");
+            }
+            synchronized (this.overflow) {
+                this.overflow.add(task);
+                this.drain();
+            }
+        }
+
+        @Override
+        protected void afterExecute(Runnable runnable, Throwable throwable) {
+            synchronized (this.overflow) {
+                this.drain();
+            }
+        }
+
+        private int getDepth() {
+            synchronized (this.overflow) {
+                return this.getQueue().size() + this.overflow.size();
+            }
+        }
+
+        /**
+         * Must be called while holding the overflow lock
+         */
+        private void drain() {
+            Runnable next;
+            while ((next = this.overflow.peek()) != null && this.getQueue().offer(next)) {
+                this.overflow.poll();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,172 @@
+package net.notfab.ttvsi.server.services;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.server.models.PollState;
+import net.notfab.ttvsi.server.models.Room;
+import net.notfab.ttvsi.server.websocket.BufferedWebSocketHandler;
+import net.notfab.ttvsi.server.websocket.ReplayLog;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically reclaims memory held for rooms nobody is using.
+ * <ul>
+ *     <li>Writers whose session died without a close callback are closed.</li>
+ *     <li>Replay logs of rooms without connected clients are dropped once idle, or earlier when all logs together
+ *     go over budget, least recently active first.</li>
+ *     <li>Rooms with no clients, members or polls are dropped once idle, their rewards are loaded back from the
+ *     store when the room is next used.</li>
+ * </ul>
+ * Each sweep also records how many bytes every room's replay log and the outbound queues hold.
+ */
+@Slf4j
+@Service
+public class RoomJanitor {
+
+    private final BufferedWebSocketHandler server;
+    private final RoomRegistry rooms;
+    private final RoomExecutor executor;
+    private final PollRegistry polls;
+    private final JanitorProperties properties;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "room-janitor"));
+
+    private final LongAdder evictedRooms = new LongAdder();
+    private final LongAdder evictedLogs = new LongAdder();
+    private final LongAdder closedOrphans = new LongAdder();
+    private volatile Map<String, Long> roomBytes = Map.of();
+    private volatile long replayBytes;
+    private volatile long bufferBytes;
+
+    public RoomJanitor(BufferedWebSocketHandler server, RoomRegistry rooms, RoomExecutor executor, PollRegistry polls,
+                       JanitorProperties properties) {
+        this.server = server;
+        this.rooms = rooms;
+        this.executor = executor;
+        this.polls = polls;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        long interval = this.properties.getInterval().toMillis();
+        this.timer.scheduleWithFixedDelay(() -> {
+            try {
+                this.sweep();
+            } catch (Exception ex) {
+                log.error("Room janitor sweep failed", ex);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.timer.shutdownNow();
+    }
+
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - this.properties.getIdleTtl().toMillis();
+        this.closedOrphans.add(this.server.closeOrphans());
+
+        // Replay logs, idle rooms without clients first
+        Map<String, Long> bytes = new HashMap<>();
+        List<Map.Entry<String, ReplayLog>> droppable = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<String, ReplayLog> entry : this.server.getReplayLogs().entrySet()) {
+            boolean connected = this.isConnected(entry.getKey());
+            if (!connected && entry.getValue().getLastAppend() < cutoff) {
+                this.dropLog(entry);
+                continue;
+            }
+            long size = entry.getValue().getBytes();
+            bytes.put(entry.getKey(), size);
+            total += size;
+            if (!connected) {
+                droppable.add(entry);
+            }
+        }
+        // Then by budget, least recently active first
+        if (total > this.properties.getMaxReplayBytes()) {
+            droppable.sort(Comparator.comparingLong(entry -> entry.getValue().getLastAppend()));
+            for (Map.Entry<String, ReplayLog> entry : droppable) {
+                if (total <= this.properties.getMaxReplayBytes()) {
+                    break;
+                }
+                total -= bytes.remove(entry.getKey());
+                this.dropLog(entry);
+            }
+            if (total > this.properties.getMaxReplayBytes()) {
+                log.warn("Replay logs hold {} bytes over budget, all in rooms with connected clients",
+                        total - this.properties.getMaxReplayBytes());
+            }
+        }
+
+        // Rooms
+        Set<String> pollRooms = this.polls.getPolls().stream()
+                .map(PollState::getRoom)
+                .collect(Collectors.toSet());
+        for (Room room : this.rooms.getRooms()) {
+            if (pollRooms.contains(room.getId()) || !room.isDisposable() || room.getLastActivity() >= cutoff) {
+                continue;
+            }
+            // On the room's loop, a listener holding the room can't be changing it while it is dropped
+            this.executor.enqueue(room.getId(), () -> {
+                if (this.rooms.evict(room.getId(), cutoff)) {
+                    this.evictedRooms.increment();
+                }
+            });
+        }
+
+        this.roomBytes = Map.copyOf(bytes);
+        this.replayBytes = total;
+        this.bufferBytes = this.server.getQueuedBytes();
+        log.debug("Janitor sweep done, {} rooms, {} replay bytes, {} queued bytes",
+                this.rooms.getRooms().size(), this.replayBytes, this.bufferBytes);
+    }
+
+    /**
+     * Bytes held by each room's replay log as of the last sweep
+     */
+    public Map<String, Long> getRoomBytes() {
+        return this.roomBytes;
+    }
+
+    public long getReplayBytes() {
+        return this.replayBytes;
+    }
+
+    public long getBufferBytes() {
+        return this.bufferBytes;
+    }
+
+    public long getEvictedRooms() {
+        return this.evictedRooms.sum();
+    }
+
+    public long getEvictedLogs() {
+        return this.evictedLogs.sum();
+    }
+
+    public long getClosedOrphans() {
+        return this.closedOrphans.sum();
+    }
+
+    private boolean isConnected(String roomId) {
+        Room room = this.rooms.get(roomId);
+        return room != null && !room.getClients().isEmpty();
+    }
+
+    private void dropLog(Map.Entry<String, ReplayLog> entry) {
+        this.server.dropReplayLog(entry.getKey(), entry.getValue());
+        this.evictedLogs.increment();
+    }
+
+}
@@ -1,5 +1,7 @@
 package net.notfab.ttvsi.server.services;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.Nullable;
 import lombok.extern.slf4j.Slf4j;
 import net.notfab.ttvsi.common.WsCredentials;
@@ -11,18 +13,26 @@ import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
-import java.util.Map;
-
+/**
+ * Keeps the Twitch channels connected to each room.
+ * Only runs on the room's owner, clients connecting to other nodes are forwarded over the bus, so the member list
+ * covers the whole cluster and a single node broadcasts it.
+ */
 @Slf4j
 @Service
 public class RoomManager {
 
     private final BufferedWebSocketHandler server;
-    private final Map<String, Room> rooms = new HashMap<>();
+    private final RoomRegistry rooms;
+    private final DistributionSummary members;
 
-    public RoomManager(BufferedWebSocketHandler server) {
+    public RoomManager(BufferedWebSocketHandler server, RoomRegistry rooms, MeterRegistry registry) {
         this.server = server;
+        this.rooms = rooms;
+        this.members = DistributionSummary.builder("ttv.room.members")
+                .description("Members of a room after someone joined or left")
+                .publishPercentileHistogram()
+                .register(registry);
     }
 
     @EventListener
@@ -33,9 +43,10 @@ public class RoomManager {
         }
         log.info("{} connected to room {}", credentials.twitchId(), credentials.roomId());
         // --- Send room data
-        Room room = rooms.computeIfAbsent(credentials.roomId(), k -> new Room(credentials.roomId()));
+        Room room = rooms.getOrCreate(credentials.roomId());
         room.getMembers().add(credentials.twitchId());
-        this.server.broadcast(room.getId(), new RoomMemberSyncEvent(room.getMembers()));
+        this.members.record(room.getMembers().size());
+        this.server.broadcast(room.getId(), new RoomMemberSyncEvent(room.getMembersSnapshot()));
     }
 
     @EventListener
@@ -51,13 +62,11 @@ public class RoomManager {
             return;
         }
         room.getMembers().remove(credentials.twitchId());
-        this.server.broadcast(room.getId(), new RoomMemberSyncEvent(room.getMembers()));
+        this.members.record(room.getMembers().size());
+        this.server.broadcast(room.getId(), new RoomMemberSyncEvent(room.getMembersSnapshot()));
     }
 
     public @Nullable Room get(@Nullable String roomId) {
-        if (roomId == null) {
-            return null;
-        }
         return this.rooms.get(roomId);
     }
 
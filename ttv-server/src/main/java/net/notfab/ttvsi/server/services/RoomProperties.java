@@ -0,0 +1,20 @@
+package net.notfab.ttvsi.server.services;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "ttv.rooms")
+public class RoomProperties {
+
+    /**
+     * Number of room event loops, 0 uses one per available processor
+     */
+    private int shards = 0;
+
+    /**
+     * Maximum number of pending events per event loop before producers are blocked
+     */
+    private int shardQueueCapacity = 10_000;
+
+}
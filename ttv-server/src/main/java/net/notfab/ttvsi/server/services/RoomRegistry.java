@@ -0,0 +1,90 @@
+package net.notfab.ttvsi.server.services;
+
+import jakarta.annotation.Nullable;
+import net.notfab.ttvsi.server.models.Room;
+import net.notfab.ttvsi.server.store.RoomRecord;
+import net.notfab.ttvsi.server.store.RoomStateStore;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single index of every room in memory, shared by the websocket handler, {@link RoomManager} and listeners.
+ * Idle rooms are evicted and loaded back from the {@link RoomStateStore} the next time they are used.
+ */
+@Service
+public class RoomRegistry {
+
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final RoomStateStore store;
+
+    public RoomRegistry(RoomStateStore store) {
+        this.store = store;
+    }
+
+    public Room getOrCreate(String roomId) {
+        return this.rooms.computeIfAbsent(roomId, this::load);
+    }
+
+    public @Nullable Room get(@Nullable String roomId) {
+        if (roomId == null) {
+            return null;
+        }
+        return this.rooms.get(roomId);
+    }
+
+    /**
+     * Register a connected client in a room, creating the room if needed
+     */
+    public Room join(String roomId, UUID clientId) {
+        // Atomic with eviction, a room being joined is never dropped
+        return this.rooms.compute(roomId, (id, room) -> {
+            Room target = room == null ? this.load(id) : room;
+            target.getClients().add(clientId);
+            target.touch();
+            return target;
+        });
+    }
+
+    /**
+     * Remove a disconnected client from a room
+     */
+    public void leave(String roomId, UUID clientId) {
+        Room room = this.rooms.get(roomId);
+        if (room != null) {
+            room.getClients().remove(clientId);
+            room.touch();
+        }
+    }
+
+    /**
+     * Drop a room if it is still disposable and was idle since the cutoff
+     *
+     * @return true if the room is gone
+     */
+    public boolean evict(String roomId, long idleSince) {
+        Room removed = this.rooms.computeIfPresent(roomId, (id, room) ->
+                room.isDisposable() && room.getLastActivity() < idleSince ? null : room);
+        return removed == null;
+    }
+
+    public Collection<Room> getRooms() {
+        return this.rooms.values();
+    }
+
+    /**
+     * New in-memory room, with the rewards it had when it was last stored
+     */
+    private Room load(String roomId) {
+        Room room = new Room(roomId);
+        RoomRecord record = this.store.getRoom(roomId);
+        if (record != null) {
+            room.restoreRewards(record.rewards(), record.rewardVersion());
+        }
+        return room;
+    }
+
+}
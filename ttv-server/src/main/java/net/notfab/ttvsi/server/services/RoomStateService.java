@@ -0,0 +1,60 @@
+package net.notfab.ttvsi.server.services;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.server.models.PollState;
+import net.notfab.ttvsi.server.models.Room;
+import net.notfab.ttvsi.server.store.PollRecord;
+import net.notfab.ttvsi.server.store.RoomRecord;
+import net.notfab.ttvsi.server.store.RoomStateStore;
+import net.notfab.ttvsi.server.store.StoreSnapshot;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bridges live rooms and polls with the {@link RoomStateStore}.
+ * The store is loaded before the websocket accepts clients, rooms are then rebuilt from it by {@link RoomRegistry}
+ * on first use, and polls are handed to the poll listener so their timers are armed again.
+ */
+@Slf4j
+@Service
+public class RoomStateService {
+
+    private final RoomStateStore store;
+    private List<PollRecord> restoredPolls = new ArrayList<>();
+
+    public RoomStateService(RoomStateStore store) {
+        this.store = store;
+    }
+
+    @PostConstruct
+    public void restore() {
+        StoreSnapshot snapshot = this.store.load();
+        this.restoredPolls = new ArrayList<>(snapshot.polls());
+        log.info("Loaded {} stored rooms and {} polls", snapshot.rooms().size(), snapshot.polls().size());
+    }
+
+    /**
+     * Polls that were running before the restart, can only be taken once
+     */
+    public synchronized List<PollRecord> takeRestoredPolls() {
+        List<PollRecord> polls = this.restoredPolls;
+        this.restoredPolls = new ArrayList<>();
+        return polls;
+    }
+
+    public void saveRoom(Room room) {
+        this.store.putRoom(new RoomRecord(room.getId(), room.getRewards(), room.getRewardVersion()));
+    }
+
+    public void savePoll(PollState state) {
+        this.store.putPoll(new PollRecord(state.getPoll(), state.getRoom(), state.getDeadline(), state.getChannelVotes()));
+    }
+
+    public void removePoll(String id) {
+        this.store.removePoll(id);
+    }
+
+}
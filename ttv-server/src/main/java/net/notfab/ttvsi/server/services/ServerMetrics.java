@@ -0,0 +1,110 @@
+package net.notfab.ttvsi.server.services;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.Nonnull;
+import net.notfab.ttvsi.server.cluster.RoomBus;
+import net.notfab.ttvsi.server.listeners.PollListener;
+import net.notfab.ttvsi.server.websocket.BufferedWebSocketHandler;
+import net.notfab.ttvsi.server.websocket.CompressionStats;
+import org.springframework.stereotype.Component;
+
+/**
+ * Gauges over state owned by other components, read when the registry is scraped.
+ */
+@Component
+public class ServerMetrics implements MeterBinder {
+
+    private final BufferedWebSocketHandler server;
+    private final RoomRegistry rooms;
+    private final RoomExecutor executor;
+    private final PollRegistry polls;
+    private final PollListener pollListener;
+    private final RoomJanitor janitor;
+    private final CompressionStats compression;
+    private final RoomBus bus;
+
+    public ServerMetrics(BufferedWebSocketHandler server, RoomRegistry rooms, RoomExecutor executor, PollRegistry polls,
+                         PollListener pollListener, RoomJanitor janitor, CompressionStats compression, RoomBus bus) {
+        this.server = server;
+        this.rooms = rooms;
+        this.executor = executor;
+        this.polls = polls;
+        this.pollListener = pollListener;
+        this.janitor = janitor;
+        this.compression = compression;
+        this.bus = bus;
+    }
+
+    @Override
+    public void bindTo(@Nonnull MeterRegistry registry) {
+        Gauge.builder("ttv.sessions", this.server, BufferedWebSocketHandler::getSessionCount)
+                .description("Open websocket sessions")
+                .register(registry);
+        Gauge.builder("ttv.rooms", this.rooms, rooms -> rooms.getRooms().size())
+                .description("Rooms held in memory")
+                .register(registry);
+        for (int i = 0; i < this.executor.getShardCount(); i++) {
+            int shard = i;
+            Gauge.builder("ttv.rooms.loop.depth", this.executor, executor -> executor.getQueueDepth(shard))
+                    .description("Pending events on a room event loop")
+                    .tag("shard", String.valueOf(shard))
+                    .register(registry);
+        }
+
+        Gauge.builder("ttv.polls", this.polls, polls -> polls.getPolls().size())
+                .description("Polls held in memory, running or retained")
+                .register(registry);
+        FunctionCounter.builder("ttv.polls.updates", this.pollListener, PollListener::getUpdatesReceived)
+                .description("Poll tally updates")
+                .tag("stage", "received")
+                .register(registry);
+        FunctionCounter.builder("ttv.polls.updates", this.pollListener, PollListener::getUpdatesBroadcast)
+                .description("Poll tally updates")
+                .tag("stage", "broadcast")
+                .register(registry);
+
+        Gauge.builder("ttv.memory.replay", this.janitor, RoomJanitor::getReplayBytes)
+                .description("Bytes held by room replay logs as of the last sweep")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ttv.memory.replay.max", this.janitor, janitor -> janitor.getRoomBytes().values().stream()
+                        .mapToLong(Long::longValue)
+                        .max()
+                        .orElse(0))
+                .description("Bytes held by the largest room replay log as of the last sweep")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ttv.memory.buffers", this.janitor, RoomJanitor::getBufferBytes)
+                .description("Bytes waiting in outbound queues as of the last sweep")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("ttv.janitor.evictions", this.janitor, RoomJanitor::getEvictedRooms)
+                .tag("kind", "room")
+                .register(registry);
+        FunctionCounter.builder("ttv.janitor.evictions", this.janitor, RoomJanitor::getEvictedLogs)
+                .tag("kind", "replay")
+                .register(registry);
+        FunctionCounter.builder("ttv.janitor.evictions", this.janitor, RoomJanitor::getClosedOrphans)
+                .tag("kind", "orphan")
+                .register(registry);
+
+        Gauge.builder("ttv.compression.sessions", this.compression, CompressionStats::getSessions)
+                .description("Sessions that negotiated permessage-deflate")
+                .register(registry);
+        FunctionCounter.builder("ttv.compression.bytes", this.compression, CompressionStats::getBytes)
+                .description("Uncompressed bytes sent to compressed sessions")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("ttv.compression.ratio", this.compression, CompressionStats::getRatio)
+                .description("Estimated compressed to uncompressed size ratio")
+                .register(registry);
+
+        FunctionCounter.builder("ttv.cluster.dropped", this.bus, RoomBus::getDropped)
+                .description("Messages for other nodes dropped because the node was unknown, its queue was full or its connection was lost")
+                .register(registry);
+    }
+
+}
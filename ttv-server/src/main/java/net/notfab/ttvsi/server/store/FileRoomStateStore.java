@@ -0,0 +1,213 @@
+package net.notfab.ttvsi.server.store;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores room state in a directory as a compacted snapshot plus an append-only log of changes since.
+ * <p>
+ * Writes are only queued by the caller and merged per room or poll, a background thread appends them to the log
+ * every flush interval. Once the log grows past the compaction threshold the full state is written to a new
+ * snapshot and the log is truncated. Replaying the log over the snapshot is idempotent, so a crash in between
+ * only costs replaying a few extra entries.
+ */
+@Slf4j
+public class FileRoomStateStore implements RoomStateStore, AutoCloseable {
+
+    private static final String SNAPSHOT = "snapshot.json";
+    private static final String LOG = "changes.log";
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL);
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final int compactThreshold;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "store-flusher"));
+
+    // Changes not yet written, guarded by itself
+    private final Map<String, StoreEntry> pending = new LinkedHashMap<>();
+
+    // Everything written so far, only written by the flusher thread after load, rooms are also read by getRoom
+    private final Map<String, RoomRecord> rooms = new ConcurrentHashMap<>();
+    private final Map<String, PollRecord> polls = new LinkedHashMap<>();
+    private BufferedWriter log;
+    private int logEntries;
+
+    public FileRoomStateStore(Path directory, Duration flushInterval, int compactThreshold) {
+        this.snapshotFile = directory.resolve(SNAPSHOT);
+        this.logFile = directory.resolve(LOG);
+        this.compactThreshold = compactThreshold;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create store directory " + directory, e);
+        }
+        long interval = flushInterval.toMillis();
+        this.flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void putRoom(RoomRecord room) {
+        this.queue(new StoreEntry(room, null, null));
+    }
+
+    @Override
+    public void putPoll(PollRecord poll) {
+        this.queue(new StoreEntry(null, poll, null));
+    }
+
+    @Override
+    public void removePoll(String id) {
+        this.queue(new StoreEntry(null, null, id));
+    }
+
+    @Override
+    public RoomRecord getRoom(String id) {
+        synchronized (this.pending) {
+            StoreEntry entry = this.pending.get(StoreEntry.roomKey(id));
+            if (entry != null) {
+                return entry.room();
+            }
+        }
+        return this.rooms.get(id);
+    }
+
+    @Override
+    public synchronized StoreSnapshot load() {
+        this.rooms.clear();
+        this.polls.clear();
+        try {
+            if (Files.exists(this.snapshotFile)) {
+                StoreSnapshot snapshot = this.mapper.readValue(this.snapshotFile.toFile(), StoreSnapshot.class);
+                snapshot.rooms().forEach(room -> this.rooms.put(room.id(), room));
+                snapshot.polls().forEach(poll -> this.polls.put(poll.poll().getId(), poll));
+            }
+            this.logEntries = 0;
+            if (Files.exists(this.logFile)) {
+                try (BufferedReader reader = Files.newBufferedReader(this.logFile, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isBlank()) {
+                            continue;
+                        }
+                        try {
+                            this.apply(this.mapper.readValue(line, StoreEntry.class));
+                            this.logEntries++;
+                        } catch (IOException ex) {
+                            // A crash can leave the last line half written
+                            log.warn("Skipped unreadable log entry in {}", this.logFile);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load room state from " + this.snapshotFile.getParent(), e);
+        }
+        log.info("Loaded {} rooms and {} polls from {}", this.rooms.size(), this.polls.size(), this.snapshotFile.getParent());
+        return new StoreSnapshot(new ArrayList<>(this.rooms.values()), new ArrayList<>(this.polls.values()));
+    }
+
+    @Override
+    public void close() {
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.flush();
+        synchronized (this) {
+            if (this.log != null) {
+                try {
+                    this.log.close();
+                } catch (IOException ex) {
+                    log.error("Failed to close {}", this.logFile, ex);
+                }
+                this.log = null;
+            }
+        }
+    }
+
+    private void queue(StoreEntry entry) {
+        synchronized (this.pending) {
+            this.pending.put(entry.key(), entry);
+        }
+    }
+
+    /**
+     * Append pending changes to the log, compacting it if it grew too large
+     */
+    private synchronized void flush() {
+        List<StoreEntry> entries;
+        synchronized (this.pending) {
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            entries = new ArrayList<>(this.pending.values());
+            this.pending.clear();
+            // Applied before releasing pending, so getRoom never misses an entry in between
+            entries.forEach(this::apply);
+        }
+        try {
+            if (this.log == null) {
+                this.log = Files.newBufferedWriter(this.logFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            for (StoreEntry entry : entries) {
+                this.log.write(this.mapper.writeValueAsString(entry));
+                this.log.newLine();
+            }
+            this.log.flush();
+            this.logEntries += entries.size();
+            if (this.logEntries >= this.compactThreshold) {
+                this.compact();
+            }
+        } catch (IOException ex) {
+            log.error("Failed to write {} entries to {}", entries.size(), this.logFile, ex);
+        }
+    }
+
+    /**
+     * Write the full state to a new snapshot and start an empty log
+     */
+    private void compact() throws IOException {
+        Path temp = this.snapshotFile.resolveSibling(SNAPSHOT + ".tmp");
+        StoreSnapshot snapshot = new StoreSnapshot(new ArrayList<>(this.rooms.values()), new ArrayList<>(this.polls.values()));
+        this.mapper.writeValue(temp.toFile(), snapshot);
+        Files.move(temp, this.snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.log.close();
+        this.log = Files.newBufferedWriter(this.logFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.logEntries = 0;
+        log.debug("Compacted room state, {} rooms and {} polls", this.rooms.size(), this.polls.size());
+    }
+
+    private void apply(StoreEntry entry) {
+        if (entry.room() != null) {
+            this.rooms.put(entry.room().id(), entry.room());
+        } else if (entry.poll() != null) {
+            this.polls.put(entry.poll().poll().getId(), entry.poll());
+        } else if (entry.removedPoll() != null) {
+            this.polls.remove(entry.removedPoll());
+        }
+    }
+
+}
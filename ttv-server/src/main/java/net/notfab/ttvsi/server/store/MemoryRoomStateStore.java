@@ -0,0 +1,40 @@
+package net.notfab.ttvsi.server.store;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the last state in memory only, for single runs and tests.
+ */
+public class MemoryRoomStateStore implements RoomStateStore {
+
+    private final Map<String, RoomRecord> rooms = new ConcurrentHashMap<>();
+    private final Map<String, PollRecord> polls = new ConcurrentHashMap<>();
+
+    @Override
+    public void putRoom(RoomRecord room) {
+        this.rooms.put(room.id(), room);
+    }
+
+    @Override
+    public void putPoll(PollRecord poll) {
+        this.polls.put(poll.poll().getId(), poll);
+    }
+
+    @Override
+    public void removePoll(String id) {
+        this.polls.remove(id);
+    }
+
+    @Override
+    public RoomRecord getRoom(String id) {
+        return this.rooms.get(id);
+    }
+
+    @Override
+    public StoreSnapshot load() {
+        return new StoreSnapshot(new ArrayList<>(this.rooms.values()), new ArrayList<>(this.polls.values()));
+    }
+
+}
@@ -0,0 +1,12 @@
+package net.notfab.ttvsi.server.store;
+
+import net.notfab.ttvsi.common.polls.Poll;
+
+import java.util.Map;
+
+/**
+ * @param deadline epoch millis at which the poll finishes
+ * @param votes    last reported votes of each channel
+ */
+public record PollRecord(Poll poll, String room, long deadline, Map<String, Map<String, Integer>> votes) {
+}
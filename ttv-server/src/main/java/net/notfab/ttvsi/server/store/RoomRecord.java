@@ -0,0 +1,8 @@
+package net.notfab.ttvsi.server.store;
+
+import net.notfab.ttvsi.common.rewards.Reward;
+
+import java.util.List;
+
+public record RoomRecord(String id, List<Reward> rewards, long rewardVersion) {
+}
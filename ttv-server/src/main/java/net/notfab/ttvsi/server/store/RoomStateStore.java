@@ -0,0 +1,37 @@
+package net.notfab.ttvsi.server.store;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Durable copy of room state that survives a server restart.
+ * Writes may be applied asynchronously, {@link #load()} is only called once on startup.
+ */
+public interface RoomStateStore {
+
+    /**
+     * Save the current state of a room, replacing any previous copy
+     */
+    void putRoom(RoomRecord room);
+
+    /**
+     * Save the current state of a running poll, replacing any previous copy
+     */
+    void putPoll(PollRecord poll);
+
+    /**
+     * Forget a poll that was closed
+     */
+    void removePoll(String id);
+
+    /**
+     * Latest state of a room, including writes not applied yet. Only valid after {@link #load()}
+     */
+    @Nullable
+    RoomRecord getRoom(String id);
+
+    /**
+     * Read everything that was stored
+     */
+    StoreSnapshot load();
+
+}
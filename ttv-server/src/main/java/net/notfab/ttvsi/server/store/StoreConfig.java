@@ -0,0 +1,20 @@
+package net.notfab.ttvsi.server.store;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+public class StoreConfig {
+
+    @Bean
+    public RoomStateStore roomStateStore(StoreProperties properties) {
+        return switch (properties.getType()) {
+            case MEMORY -> new MemoryRoomStateStore();
+            case FILE -> new FileRoomStateStore(Path.of(properties.getDirectory()), properties.getFlushInterval(),
+                    properties.getCompactThreshold());
+        };
+    }
+
+}
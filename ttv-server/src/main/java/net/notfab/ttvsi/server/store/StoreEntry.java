@@ -0,0 +1,21 @@
+package net.notfab.ttvsi.server.store;
+
+import jakarta.annotation.Nullable;
+
+/**
+ * Single line of the append-only log, exactly one field is set
+ */
+record StoreEntry(@Nullable RoomRecord room, @Nullable PollRecord poll, @Nullable String removedPoll) {
+
+    String key() {
+        if (this.room != null) {
+            return roomKey(this.room.id());
+        }
+        return "poll:" + (this.poll != null ? this.poll.poll().getId() : this.removedPoll);
+    }
+
+    static String roomKey(String id) {
+        return "room:" + id;
+    }
+
+}
@@ -0,0 +1,29 @@
+package net.notfab.ttvsi.server.store;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "ttv.store")
+public class StoreProperties {
+
+    private StoreType type = StoreType.MEMORY;
+
+    /**
+     * Directory holding the snapshot and log files
+     */
+    private String directory = "data";
+
+    /**
+     * How often pending writes are appended to the log, changes to the same room or poll in between are merged
+     */
+    private Duration flushInterval = Duration.ofSeconds(1);
+
+    /**
+     * Number of log entries after which the log is compacted into a new snapshot
+     */
+    private int compactThreshold = 1000;
+
+}
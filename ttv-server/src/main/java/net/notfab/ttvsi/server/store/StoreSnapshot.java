@@ -0,0 +1,6 @@
+package net.notfab.ttvsi.server.store;
+
+import java.util.List;
+
+public record StoreSnapshot(List<RoomRecord> rooms, List<PollRecord> polls) {
+}
@@ -0,0 +1,12 @@
+package net.notfab.ttvsi.server.store;
+
+public enum StoreType {
+    /**
+     * Nothing is persisted, state is lost on restart
+     */
+    MEMORY,
+    /**
+     * Append-only log with periodic snapshots on local disk
+     */
+    FILE
+}
@@ -1,52 +1,77 @@
 package net.notfab.ttvsi.server.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.annotation.Nonnull;
 import lombok.extern.slf4j.Slf4j;
-import net.jodah.expiringmap.ExpirationListener;
-import net.jodah.expiringmap.ExpirationPolicy;
-import net.jodah.expiringmap.ExpiringMap;
 import net.notfab.ttvsi.common.Headers;
 import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
 import net.notfab.ttvsi.common.WsCredentials;
+import net.notfab.ttvsi.common.trace.TraceMetrics;
+import net.notfab.ttvsi.common.trace.Traced;
+import net.notfab.ttvsi.server.cluster.RoomBus;
+import net.notfab.ttvsi.server.cluster.RoomOwnership;
+import net.notfab.ttvsi.server.models.Room;
+import net.notfab.ttvsi.server.services.RoomExecutor;
+import net.notfab.ttvsi.server.services.RoomRegistry;
 import net.notfab.ttvsi.server.websocket.events.WsClosedEvent;
 import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
 import net.notfab.ttvsi.server.websocket.events.WsOpenEvent;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Component
-public class BufferedWebSocketHandler extends TextWebSocketHandler implements ExpirationListener<UUID, Queue<NetworkEvent>> {
+public class BufferedWebSocketHandler extends AbstractWebSocketHandler {
 
-    // Map client ID to active session
-    private final Map<UUID, WebSocketSession> sessions = new ConcurrentHashMap<>();
+    // Map client ID to the outbound writer of its active session
+    private final Map<UUID, SessionWriter> writers = new ConcurrentHashMap<>();
 
-    // Map client ID to a queue of unsent messages with auto-expiration
-    private final ExpiringMap<UUID, Queue<NetworkEvent>> buffers = ExpiringMap.builder()
-            .expiration(30, TimeUnit.MINUTES)
-            .expirationPolicy(ExpirationPolicy.CREATED)
-            .expirationListener(this)
-            .build();
-
-    // Map client ID to joined room
-    private final Map<String, Set<UUID>> rooms = new HashMap<>();
+    // Map room ID to the log of recent broadcasts, used to catch up reconnecting clients
+    private final Map<String, ReplayLog> logs = new ConcurrentHashMap<>();
 
+    private final RoomRegistry rooms;
+    private final RoomExecutor executor;
+    private final NetEventDispatcher dispatcher;
     private final ApplicationEventPublisher publisher;
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final WebsocketProperties properties;
+    private final CompressionStats compression;
+    private final RoomBus bus;
+    private final RoomOwnership ownership;
+    private final WebsocketMetrics metrics;
+    private final TraceMetrics traces;
+    private final WireCodec codec;
 
-    public BufferedWebSocketHandler(ApplicationEventPublisher publisher) {
+    public BufferedWebSocketHandler(
+            RoomRegistry rooms,
+            RoomExecutor executor,
+            NetEventDispatcher dispatcher,
+            ApplicationEventPublisher publisher,
+            WebsocketProperties properties,
+            CompressionStats compression,
+            RoomBus bus,
+            RoomOwnership ownership,
+            WebsocketMetrics metrics,
+            TraceMetrics traces) {
+        this.rooms = rooms;
+        this.executor = executor;
+        this.dispatcher = dispatcher;
         this.publisher = publisher;
+        this.properties = properties;
+        this.compression = compression;
+        this.bus = bus;
+        this.ownership = ownership;
+        this.metrics = metrics;
+        this.traces = traces;
+        this.codec = new WireCodec(metrics.getSerialization());
     }
 
     @Override
@@ -54,14 +79,27 @@ public class BufferedWebSocketHandler extends TextWebSocketHandler implements Ex
         WsCredentials credentials = this.getCredentials(session);
         if (credentials != null) {
             // Store the session
-            sessions.put(credentials.clientId(), session);
-            // Store the room
-            rooms.computeIfAbsent(credentials.roomId(), k -> new HashSet<>())
-                    .add(credentials.clientId());
-            this.publisher.publishEvent(new WsOpenEvent(credentials));
-
-            // Send any buffered messages to the client
-            this.sendBufferedMessages(credentials.clientId());
+            SessionWriter writer = new SessionWriter(session, this.properties, this.compression, this.metrics);
+            if (writer.isCompressed()) {
+                this.compression.onSessionOpened();
+            }
+            // Send anything the client missed while disconnected, then store the session and the room.
+            // Both happen under the room log's lock so no live frame is queued ahead of the replay
+            ReplayLog replayLog = this.getReplayLog(credentials.roomId());
+            Long last = (Long) session.getAttributes().get(Headers.X_LAST_SEQUENCE);
+            Long epoch = (Long) session.getAttributes().get(Headers.X_LAST_EPOCH);
+            int replayed = replayLog.subscribe(epoch, last, writer::offer, () -> {
+                SessionWriter previous = writers.put(credentials.clientId(), writer);
+                if (previous != null) {
+                    this.close(previous);
+                }
+                rooms.join(credentials.roomId(), credentials.clientId());
+            });
+            if (last != null) {
+                this.metrics.onReplayed(replayed);
+            }
+
+            this.publish(new WsOpenEvent(credentials));
         } else {
             try {
                 session.close(CloseStatus.POLICY_VIOLATION.withReason("Missing client ID"));
@@ -73,104 +111,213 @@ public class BufferedWebSocketHandler extends TextWebSocketHandler implements Ex
 
     @Override
     protected void handleTextMessage(@Nonnull WebSocketSession session, @Nonnull TextMessage message) throws Exception {
+        this.handleEvent(session, this.codec.decode(message.getPayload()));
+    }
+
+    @Override
+    protected void handleBinaryMessage(@Nonnull WebSocketSession session, @Nonnull BinaryMessage message) throws Exception {
+        WireEncoding encoding = SessionWriter.getEncoding(session);
+        if (!encoding.isBinary()) {
+            session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Binary frames require a binary encoding"));
+            return;
+        }
+        this.handleEvent(session, this.codec.decode(encoding, message.getPayload()));
+    }
+
+    private void handleEvent(WebSocketSession session, NetworkEvent event) {
         WsCredentials credentials = this.getCredentials(session);
-        if (credentials == null) {
+        if (credentials == null || event == null) {
             return;
         }
-        NetworkEvent event = mapper.readValue(message.getPayload(), NetworkEvent.class);
-        if (event == null) {
+        this.metrics.onInbound(event.getType());
+        if (event instanceof Traced traced) {
+            this.traces.hop(traced, TraceMetrics.SERVER_RECEIVED);
+        }
+        WsMessageEvent wsEvent = new WsMessageEvent(credentials, event.getType(), event);
+        // Room state has a single writer, the node owning the room
+        if (this.ownership.isOwnedEvent(event.getType()) && !this.ownership.isOwner(credentials.roomId())) {
+            if (!this.bus.forward(this.ownership.ownerOf(credentials.roomId()), wsEvent)) {
+                // Don't let the client believe the change went through, it resends after reconnecting
+                try {
+                    session.close(CloseStatus.SERVICE_OVERLOAD.withReason("Room owner is unreachable"));
+                } catch (IOException e) {
+                    // No need for logs
+                }
+            }
             return;
         }
-        this.publisher.publishEvent(new WsMessageEvent(credentials, event.getType(), event));
+        this.executor.execute(credentials.roomId(), () -> this.dispatcher.dispatch(wsEvent));
     }
 
     @Override
     public void afterConnectionClosed(@Nonnull WebSocketSession session, @Nonnull CloseStatus status) {
         WsCredentials credentials = this.getCredentials(session);
         if (credentials != null) {
-            sessions.remove(credentials.clientId());
-            this.publisher.publishEvent(new WsClosedEvent(credentials));
+            SessionWriter writer = writers.get(credentials.clientId());
+            if (writer != null && writer.getSession() == session && writers.remove(credentials.clientId(), writer)) {
+                this.close(writer);
+                rooms.leave(credentials.roomId(), credentials.clientId());
+            }
+            this.publish(new WsClosedEvent(credentials));
         }
     }
 
     /**
      * Send a message to a specific client.
-     * If the client is disconnected, message will be buffered.
+     * Direct messages are not part of the room log, if the client is disconnected the message is dropped.
      */
     public void send(UUID clientId, NetworkEvent message) {
-        WebSocketSession session = sessions.get(clientId);
-
-        // Store message in buffer regardless of connection status
-        Queue<NetworkEvent> buffer = buffers.computeIfAbsent(clientId,
-                k -> new ConcurrentLinkedQueue<>());
-        buffer.add(message);
-
-        // If client is connected, send the message immediately
-        if (session != null && session.isOpen()) {
-            this.sendBufferedMessages(clientId);
+        SessionWriter writer = writers.get(clientId);
+        if (writer == null) {
+            log.debug("Dropped {} for disconnected client {}", message.getType(), clientId);
+            this.metrics.onDropped(WebsocketMetrics.Drop.OFFLINE);
+            return;
         }
+        writer.offer(new Frame(this.codec, message, Frame.UNSEQUENCED));
     }
 
     /**
      * Broadcast a message to all connected clients.
-     * For disconnected clients, the message will be buffered.
      */
     public void broadcast(NetworkEvent message) {
-        // Add message to all client buffers
-        for (UUID clientId : buffers.keySet()) {
-            buffers.get(clientId).add(message);
+        Frame frame = new Frame(this.codec, message, Frame.UNSEQUENCED);
+        writers.values().forEach(writer -> writer.offer(frame));
+    }
+
+    /**
+     * Broadcast a message to all members of a room, on this node and every other node.
+     */
+    public void broadcast(String room, NetworkEvent message) {
+        this.deliver(room, message);
+        this.bus.publish(room, message);
+    }
+
+    /**
+     * Broadcast a message to the members of a room connected to this node.
+     * The message is sequenced in the room log and encoded once per wire encoding, the same frame is shared by every member.
+     * Members that are disconnected catch up from the log when they reconnect.
+     */
+    public void deliver(String room, NetworkEvent message) {
+        this.getReplayLog(room).append(this.codec, message, frame -> {
+            Room target = this.rooms.get(room);
+            if (target == null) {
+                return;
+            }
+            target.touch();
+            for (UUID id : target.getClients()) {
+                SessionWriter writer = writers.get(id);
+                if (writer != null) {
+                    writer.offer(frame);
+                }
+            }
+        });
+    }
+
+    /**
+     * Whether a client has an active session on this node
+     */
+    public boolean isConnected(UUID clientId) {
+        return this.writers.containsKey(clientId);
+    }
+
+    public int getSessionCount() {
+        return this.writers.size();
+    }
+
+    /**
+     * Replay log of every room, read only
+     */
+    public Map<String, ReplayLog> getReplayLogs() {
+        return Collections.unmodifiableMap(this.logs);
+    }
+
+    /**
+     * Drop the replay log of a room, clients reconnecting later won't get a replay
+     */
+    public void dropReplayLog(String room, ReplayLog replayLog) {
+        this.logs.remove(room, replayLog);
+    }
+
+    /**
+     * Close writers whose session went away without a close callback
+     *
+     * @return the number of writers closed
+     */
+    public int closeOrphans() {
+        int closed = 0;
+        for (Map.Entry<UUID, SessionWriter> entry : this.writers.entrySet()) {
+            SessionWriter writer = entry.getValue();
+            if (writer.getSession().isOpen() || !this.writers.remove(entry.getKey(), writer)) {
+                continue;
+            }
+            this.close(writer);
+            WsCredentials credentials = this.getCredentials(writer.getSession());
+            if (credentials != null) {
+                this.rooms.leave(credentials.roomId(), credentials.clientId());
+                // Same as a normal close, the room's owner drops the channel from its members
+                this.publish(new WsClosedEvent(credentials));
+            }
+            closed++;
         }
+        return closed;
+    }
 
-        // Send to all connected clients
-        for (UUID clientId : sessions.keySet()) {
-            this.sendBufferedMessages(clientId);
+    /**
+     * Bytes waiting in every outbound queue
+     */
+    public long getQueuedBytes() {
+        long bytes = 0;
+        for (SessionWriter writer : this.writers.values()) {
+            bytes += writer.getQueuedBytes();
         }
+        return bytes;
     }
 
-    public void broadcast(String room, NetworkEvent message) {
-        this.rooms.getOrDefault(room, new HashSet<>())
-                .forEach(id -> this.send(id, message));
+    private ReplayLog getReplayLog(String room) {
+        return logs.computeIfAbsent(room, k -> new ReplayLog(this.properties.getReplayLogSize()));
+    }
+
+    private void close(SessionWriter writer) {
+        writer.close();
+        if (writer.isCompressed()) {
+            this.compression.onSessionClosed();
+        }
     }
 
     /**
-     * Send all buffered messages to a client
+     * Room members are kept by the room's owner, connections to other nodes are handed to it
      */
-    private void sendBufferedMessages(UUID clientId) {
-        WebSocketSession session = sessions.get(clientId);
-        if (session == null || !session.isOpen()) {
-            return;
-        }
-        Queue<NetworkEvent> buffer = buffers.get(clientId);
-        if (buffer == null) {
-            return;
+    private void publish(WsOpenEvent event) {
+        String room = event.credentials().roomId();
+        if (this.ownership.isOwner(room)) {
+            this.publish(event.credentials(), event);
+        } else {
+            this.bus.forward(this.ownership.ownerOf(room), event);
         }
-        while (!buffer.isEmpty()) {
-            NetworkEvent message = buffer.peek();
-            try {
-                session.sendMessage(new TextMessage(mapper.writeValueAsString(message)));
-                buffer.poll();
-            } catch (IOException e) {
-                break;
-            }
+    }
+
+    private void publish(WsClosedEvent event) {
+        String room = event.credentials().roomId();
+        if (this.ownership.isOwner(room)) {
+            this.publish(event.credentials(), event);
+        } else {
+            this.bus.forward(this.ownership.ownerOf(room), event);
         }
     }
 
     /**
-     * Extract client ID from session attributes
+     * Publish an event on the event loop of the client's room, listeners never see a room concurrently.
+     * Never blocks, a session may be closed from the room's own loop or a bus reader
      */
-    private WsCredentials getCredentials(WebSocketSession session) {
-        return (WsCredentials) session.getAttributes().get(Headers.X_CREDENTIALS);
+    private void publish(WsCredentials credentials, Object event) {
+        this.executor.enqueue(credentials.roomId(), () -> this.publisher.publishEvent(event));
     }
 
     /**
-     * Delete expired room mappings
+     * Extract client ID from session attributes
      */
-    @Override
-    public void expired(UUID uuid, Queue<NetworkEvent> buffer) {
-        if (this.sessions.containsKey(uuid)) {
-            return;
-        }
-        this.rooms.forEach((id, room) -> room.remove(uuid));
+    private WsCredentials getCredentials(WebSocketSession session) {
+        return (WsCredentials) session.getAttributes().get(Headers.X_CREDENTIALS);
     }
 
 }
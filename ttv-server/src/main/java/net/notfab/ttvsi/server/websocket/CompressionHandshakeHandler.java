@@ -0,0 +1,39 @@
+package net.notfab.ttvsi.server.websocket;
+
+import jakarta.annotation.Nonnull;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.List;
+
+/**
+ * Handshake handler that only lets permessage-deflate through when compression is enabled.
+ * The container (Tomcat) implements the extension itself and compresses every frame once negotiated.
+ */
+public class CompressionHandshakeHandler extends DefaultHandshakeHandler {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final WebsocketProperties properties;
+
+    public CompressionHandshakeHandler(WebsocketProperties properties) {
+        this.properties = properties;
+    }
+
+    @Nonnull
+    @Override
+    protected List<WebSocketExtension> filterRequestedExtensions(
+            @Nonnull ServerHttpRequest request,
+            @Nonnull List<WebSocketExtension> requestedExtensions,
+            @Nonnull List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> extensions = super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+        if (this.properties.isCompression()) {
+            return extensions;
+        }
+        return extensions.stream()
+                .filter(extension -> !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()))
+                .toList();
+    }
+
+}
@@ -0,0 +1,106 @@
+package net.notfab.ttvsi.server.websocket;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Tracks traffic to sessions that negotiated permessage-deflate.
+ * The container does not expose compressed sizes, so a sample of messages is deflated again with the same
+ * raw DEFLATE format to estimate the compression ratio.
+ */
+@Component
+public class CompressionStats {
+
+    private final WebsocketProperties properties;
+
+    private final AtomicLong sessions = new AtomicLong();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong counter = new AtomicLong();
+    private final LongAdder sampledBytes = new LongAdder();
+    private final LongAdder sampledCompressedBytes = new LongAdder();
+
+    public CompressionStats(WebsocketProperties properties) {
+        this.properties = properties;
+    }
+
+    public void onSessionOpened() {
+        this.sessions.incrementAndGet();
+    }
+
+    public void onSessionClosed() {
+        this.sessions.decrementAndGet();
+    }
+
+    /**
+     * Record a message sent to a compressed session
+     */
+    public void record(WebSocketMessage<?> message) {
+        this.bytes.add(message.getPayloadLength());
+        int rate = Math.max(1, this.properties.getCompressionSampleRate());
+        if (this.counter.incrementAndGet() % rate != 0) {
+            return;
+        }
+        byte[] payload = this.toBytes(message);
+        if (payload == null || payload.length == 0) {
+            return;
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(payload);
+            deflater.finish();
+            byte[] buffer = new byte[payload.length + 64];
+            int compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(buffer);
+            }
+            this.sampledBytes.add(payload.length);
+            this.sampledCompressedBytes.add(compressed);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public long getSessions() {
+        return this.sessions.get();
+    }
+
+    /**
+     * Uncompressed payload bytes sent to compressed sessions
+     */
+    public long getBytes() {
+        return this.bytes.sum();
+    }
+
+    /**
+     * Estimated compressed size over uncompressed size, 1.0 until enough samples exist
+     */
+    public double getRatio() {
+        long sampled = this.sampledBytes.sum();
+        if (sampled == 0) {
+            return 1.0;
+        }
+        return (double) this.sampledCompressedBytes.sum() / sampled;
+    }
+
+    private byte[] toBytes(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage text) {
+            return text.getPayload().getBytes(StandardCharsets.UTF_8);
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer buffer = binary.getPayload().asReadOnlyBuffer();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,108 @@
+package net.notfab.ttvsi.server.websocket;
+
+import jakarta.annotation.Nullable;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
+import net.notfab.ttvsi.common.polls.server.ServerPollUpdateEvent;
+import net.notfab.ttvsi.common.protocol.RoomMemberSyncEvent;
+import net.notfab.ttvsi.common.rewards.server.RewardSyncEvent;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An event to be sent to one or more clients.
+ * Each {@link WireEncoding} is encoded at most once, the first time a recipient needs it,
+ * and the resulting message is shared by every recipient and buffer.
+ * <p>
+ * Room frames carry the epoch and sequence number they were assigned in the room's {@link ReplayLog},
+ * direct frames use {@link #UNSEQUENCED}.
+ */
+public final class Frame {
+
+    public static final long UNSEQUENCED = 0;
+
+    private final WireCodec codec;
+    private final NetworkEvent event;
+    private final long epoch;
+    private final long sequence;
+    private final AtomicReferenceArray<WebSocketMessage<?>> messages =
+            new AtomicReferenceArray<>(WireEncoding.values().length);
+
+    public Frame(WireCodec codec, NetworkEvent event, long sequence) {
+        this(codec, event, 0, sequence);
+    }
+
+    public Frame(WireCodec codec, NetworkEvent event, long epoch, long sequence) {
+        this.codec = codec;
+        this.event = event;
+        this.epoch = epoch;
+        this.sequence = sequence;
+    }
+
+    public NetworkEvent event() {
+        return this.event;
+    }
+
+    public long epoch() {
+        return this.epoch;
+    }
+
+    public long sequence() {
+        return this.sequence;
+    }
+
+    /**
+     * The encoded message for an encoding
+     *
+     * @throws UncheckedIOException if the event can't be encoded
+     */
+    public WebSocketMessage<?> message(WireEncoding encoding) {
+        WebSocketMessage<?> message = this.messages.get(encoding.ordinal());
+        if (message != null) {
+            return message;
+        }
+        synchronized (this) {
+            message = this.messages.get(encoding.ordinal());
+            if (message == null) {
+                try {
+                    message = this.codec.encode(this.event, this.epoch, this.sequence, encoding);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                this.messages.set(encoding.ordinal(), message);
+            }
+            return message;
+        }
+    }
+
+    /**
+     * Bytes held by the encodings produced so far
+     */
+    public int encodedSize() {
+        int size = 0;
+        for (int i = 0; i < this.messages.length(); i++) {
+            WebSocketMessage<?> message = this.messages.get(i);
+            if (message != null) {
+                size += message.getPayloadLength();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Key of the state this frame is a snapshot of, a newer frame with the same key supersedes this one.
+     * Edge events (redeems, poll creation, poll results) have no key and must all be delivered.
+     */
+    public @Nullable String coalescingKey() {
+        return switch (this.event) {
+            case ServerPollUpdateEvent update -> update.getType() + ":" + update.id();
+            case RewardSyncEvent sync -> sync.getType().name();
+            case RoomMemberSyncEvent sync -> sync.getType().name();
+            default -> null;
+        };
+    }
+
+}
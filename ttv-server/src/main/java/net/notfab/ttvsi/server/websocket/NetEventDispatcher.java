@@ -0,0 +1,84 @@
+package net.notfab.ttvsi.server.websocket;
+
+import jakarta.annotation.Nonnull;
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.common.NetEvent;
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Routes client messages to the single {@link NetHandler} method registered for their type.
+ * Handler methods are discovered when beans are created and bound to {@link NetEventHandler} instances
+ * through {@link LambdaMetafactory}, so dispatching is a map lookup and a direct call.
+ */
+@Slf4j
+@Component
+public class NetEventDispatcher implements BeanPostProcessor {
+
+    private static final MethodType HANDLE_TYPE = MethodType.methodType(void.class, WsMessageEvent.class);
+
+    private final Map<NetEvent, NetEventHandler> handlers = new EnumMap<>(NetEvent.class);
+
+    /**
+     * Deliver a message to the handler for its type
+     */
+    public void dispatch(WsMessageEvent event) {
+        NetEventHandler handler = this.handlers.get(event.event());
+        if (handler == null) {
+            log.debug("No handler for {}", event.event());
+            return;
+        }
+        handler.handle(event);
+    }
+
+    /**
+     * Register a handler manually
+     */
+    public synchronized void register(NetEvent type, NetEventHandler handler) {
+        if (this.handlers.containsKey(type)) {
+            throw new IllegalStateException("Duplicate handler for " + type);
+        }
+        this.handlers.put(type, handler);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(@Nonnull Object bean, @Nonnull String beanName) {
+        Class<?> type = AopUtils.getTargetClass(bean);
+        for (Method method : type.getDeclaredMethods()) {
+            NetHandler annotation = method.getAnnotation(NetHandler.class);
+            if (annotation == null) {
+                continue;
+            }
+            if (!Modifier.isPublic(method.getModifiers())
+                    || method.getParameterCount() != 1
+                    || method.getParameterTypes()[0] != WsMessageEvent.class) {
+                throw new IllegalStateException("@NetHandler " + method + " must be public and take a single WsMessageEvent");
+            }
+            this.register(annotation.value(), this.bind(bean, method));
+            log.debug("Registered {} for {}", method, annotation.value());
+        }
+        return bean;
+    }
+
+    private NetEventHandler bind(Object bean, Method method) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle target = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "handle",
+                    MethodType.methodType(NetEventHandler.class, method.getDeclaringClass()),
+                    HANDLE_TYPE, target, HANDLE_TYPE);
+            return (NetEventHandler) site.getTarget().invoke(bean);
+        } catch (Throwable ex) {
+            throw new IllegalStateException("Failed to bind @NetHandler " + method, ex);
+        }
+    }
+
+}
@@ -0,0 +1,10 @@
+package net.notfab.ttvsi.server.websocket;
+
+import net.notfab.ttvsi.server.websocket.events.WsMessageEvent;
+
+@FunctionalInterface
+public interface NetEventHandler {
+
+    void handle(WsMessageEvent event);
+
+}
@@ -0,0 +1,21 @@
+package net.notfab.ttvsi.server.websocket;
+
+import net.notfab.ttvsi.common.NetEvent;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public method taking a single {@link net.notfab.ttvsi.server.websocket.events.WsMessageEvent}
+ * as the handler for one type of client message.
+ * Handlers are bound once at startup by {@link NetEventDispatcher}, each type has at most one handler.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NetHandler {
+
+    NetEvent value();
+
+}
@@ -0,0 +1,23 @@
+package net.notfab.ttvsi.server.websocket;
+
+/**
+ * What a {@link SessionWriter} does when a client can't keep up with its outbound queue.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Discard the oldest queued snapshots until the new frame fits, disconnecting if that is not enough
+     */
+    DROP_OLDEST,
+
+    /**
+     * Drop a queued snapshot superseded by the new frame, falling back to {@link #DROP_OLDEST}
+     */
+    COALESCE,
+
+    /**
+     * Close the session, the client catches up from the room replay log once it reconnects
+     */
+    DISCONNECT
+
+}
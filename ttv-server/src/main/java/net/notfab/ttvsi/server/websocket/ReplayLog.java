@@ -0,0 +1,128 @@
+package net.notfab.ttvsi.server.websocket;
+
+import jakarta.annotation.Nullable;
+import net.notfab.ttvsi.common.NetworkEvent;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Fixed size ring of the most recent frames broadcast to a room.
+ * Every frame is assigned a monotonically increasing sequence number, reconnecting clients
+ * send the last one they have seen and only receive what they missed.
+ * <p>
+ * Sequence numbers only mean something within the log that assigned them: every node numbers its own log,
+ * and a log dropped by the janitor starts over when the room comes back. Each log has a random epoch sent with
+ * every frame, clients presenting a different epoch get everything retained instead of being compared by sequence.
+ */
+public class ReplayLog {
+
+    private final Frame[] ring;
+    private final long epoch;
+    private final long start;
+    private long sequence;
+    private volatile long lastAppend;
+
+    public ReplayLog(int capacity) {
+        this.ring = new Frame[capacity];
+        this.epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+        this.start = System.currentTimeMillis();
+        this.sequence = this.start;
+        this.lastAppend = this.start;
+    }
+
+    /**
+     * Assign the next sequence number to an event and retain it for replay.
+     * The frame is handed to subscribers before the log is released, so it can't overtake a {@link #subscribe} backlog.
+     */
+    public synchronized Frame append(WireCodec codec, NetworkEvent event, Consumer<Frame> subscribers) {
+        long next = this.sequence + 1;
+        Frame frame = new Frame(codec, event, this.epoch, next);
+        this.ring[this.index(next)] = frame;
+        this.sequence = next;
+        this.lastAppend = System.currentTimeMillis();
+        subscribers.accept(frame);
+        return frame;
+    }
+
+    /**
+     * Offer a subscriber everything it missed, then register it, with no frame appended in between.
+     * Without a last sequence nothing is replayed.
+     *
+     * @param offer    receives the backlog in order, returns false to stop
+     * @param register makes the subscriber visible to {@link #append}
+     * @return the number of frames replayed
+     */
+    public synchronized int subscribe(@Nullable Long epoch, @Nullable Long last, Predicate<Frame> offer, Runnable register) {
+        int replayed = 0;
+        if (last != null) {
+            for (Frame frame : this.since(epoch == null ? 0 : epoch, last)) {
+                if (!offer.test(frame)) {
+                    break;
+                }
+                replayed++;
+            }
+        }
+        register.run();
+        return replayed;
+    }
+
+    /**
+     * Frames broadcast after the given sequence number, in order.
+     * If the sequence was assigned by another log (different epoch), or the client is ahead of this one,
+     * everything retained is returned.
+     * <p>
+     * Snapshot frames superseded by a later frame with the same {@link Frame#coalescingKey()} are skipped,
+     * so a client that was away during a long poll only receives the latest tally.
+     */
+    public synchronized List<Frame> since(long epoch, long last) {
+        long first = Math.max(this.start + 1, this.sequence - this.ring.length + 1);
+        long from = epoch != this.epoch || last > this.sequence ? first : Math.max(last + 1, first);
+        List<Frame> frames = new ArrayList<>((int) Math.max(0, this.sequence - from + 1));
+        Set<String> seen = new HashSet<>();
+        for (long i = this.sequence; i >= from; i--) {
+            Frame frame = this.ring[this.index(i)];
+            String key = frame.coalescingKey();
+            if (key == null || seen.add(key)) {
+                frames.add(frame);
+            }
+        }
+        Collections.reverse(frames);
+        return frames;
+    }
+
+    public long getEpoch() {
+        return this.epoch;
+    }
+
+    public synchronized long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Epoch millis of the last broadcast, or creation if nothing was broadcast yet
+     */
+    public long getLastAppend() {
+        return this.lastAppend;
+    }
+
+    /**
+     * Bytes held by the encoded frames still retained
+     */
+    public synchronized long getBytes() {
+        long bytes = 0;
+        for (Frame frame : this.ring) {
+            if (frame != null) {
+                bytes += frame.encodedSize();
+            }
+        }
+        return bytes;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % this.ring.length);
+    }
+
+}
@@ -0,0 +1,306 @@
+package net.notfab.ttvsi.server.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import net.notfab.ttvsi.common.Headers;
+import net.notfab.ttvsi.common.WireEncoding;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Outbound writer for a single session.
+ * Frames are queued without blocking the caller and written by a dedicated virtual thread,
+ * so a slow client only ever delays its own messages.
+ */
+@Slf4j
+public class SessionWriter implements Runnable {
+
+    private final WebSocketSession session;
+    private final WireEncoding encoding;
+    private final WebsocketProperties properties;
+    private final CompressionStats compression;
+    private final WebsocketMetrics metrics;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private int queuedBytes = 0;
+    private long sendStartedAt = 0;
+    private boolean closed = false;
+    private CloseStatus closing = null;
+
+    public SessionWriter(WebSocketSession session, WebsocketProperties properties, CompressionStats compression,
+                         WebsocketMetrics metrics) {
+        this.session = session;
+        this.metrics = metrics;
+        this.encoding = getEncoding(session);
+        this.properties = properties;
+        this.compression = isCompressed(session) ? compression : null;
+        Thread.ofVirtual()
+                .name("ws-writer-" + session.getId())
+                .start(this);
+    }
+
+    public WebSocketSession getSession() {
+        return this.session;
+    }
+
+    public boolean isCompressed() {
+        return this.compression != null;
+    }
+
+    /**
+     * Whether permessage-deflate was negotiated during the handshake
+     */
+    public static boolean isCompressed(WebSocketSession session) {
+        return session.getExtensions().stream()
+                .anyMatch(extension -> CompressionHandshakeHandler.PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName()));
+    }
+
+    /**
+     * Encoding negotiated during the handshake
+     */
+    public static WireEncoding getEncoding(WebSocketSession session) {
+        Object encoding = session.getAttributes().get(Headers.X_ENCODING);
+        return encoding instanceof WireEncoding value ? value : WireEncoding.JSON;
+    }
+
+    /**
+     * Queue a frame for delivery.
+     * Room frames that never make it out are replayed from the room's {@link ReplayLog} on reconnect.
+     *
+     * @return false if the writer is closed (or was closed by the overflow policy) and the frame was not accepted
+     */
+    public boolean offer(Frame frame) {
+        int size;
+        try {
+            size = frame.message(this.encoding).getPayloadLength();
+        } catch (UncheckedIOException e) {
+            log.error("Failed to encode {} as {}", frame.event().getType(), this.encoding, e);
+            return true;
+        }
+        lock.lock();
+        try {
+            if (this.closed) {
+                return false;
+            }
+            if (this.isSendStuck()) {
+                log.warn("Send to session {} exceeded time limit, disconnecting", session.getId());
+                this.metrics.onDropped(WebsocketMetrics.Drop.DISCONNECTED, this.queue.size() + 1);
+                this.disconnect(CloseStatus.SESSION_NOT_RELIABLE);
+                return false;
+            }
+            if (this.isFull(size) && !this.makeRoom(frame, size)) {
+                log.warn("Session {} outbound queue is full, disconnecting", session.getId());
+                this.metrics.onDropped(WebsocketMetrics.Drop.DISCONNECTED, this.queue.size() + 1);
+                this.disconnect(CloseStatus.SESSION_NOT_RELIABLE);
+                return false;
+            }
+            this.enqueue(frame, size);
+            this.metrics.onQueued(this.queue.size());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stop writing and discard anything still queued
+     */
+    public void close() {
+        lock.lock();
+        try {
+            this.closed = true;
+            this.queue.clear();
+            this.queuedBytes = 0;
+            this.available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return this.queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedBytes() {
+        lock.lock();
+        try {
+            return this.queuedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            Frame frame;
+            CloseStatus closing;
+            lock.lock();
+            try {
+                while (this.queue.isEmpty() && !this.closed) {
+                    this.available.await();
+                }
+                closing = this.closing;
+                frame = this.closed ? null : this.queue.poll();
+                if (frame != null) {
+                    this.queuedBytes -= this.sizeOf(frame);
+                    this.sendStartedAt = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (frame == null) {
+                if (closing != null) {
+                    // Closed here rather than by whoever hit the overflow policy, the close callback may
+                    // run synchronously and must not find the room loop or a room log locked
+                    this.closeSession(closing);
+                }
+                return;
+            }
+            try {
+                WebSocketMessage<?> message = frame.message(this.encoding);
+                if (message instanceof BinaryMessage binary) {
+                    // The payload buffer is shared by every recipient, give the container its own position
+                    message = new BinaryMessage(binary.getPayload().duplicate(), binary.isLast());
+                }
+                long start = System.nanoTime();
+                this.session.sendMessage(message);
+                this.metrics.onSent(frame.event().getType(), System.nanoTime() - start);
+                if (this.compression != null) {
+                    this.compression.record(message);
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Failed to send to session {}", session.getId(), e);
+                lock.lock();
+                try {
+                    this.sendStartedAt = 0;
+                    this.disconnect(CloseStatus.SESSION_NOT_RELIABLE);
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                lock.lock();
+                try {
+                    this.sendStartedAt = 0;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Size of a queued frame, its message is already encoded at this point
+     */
+    private int sizeOf(Frame frame) {
+        WebSocketMessage<?> message = frame.message(this.encoding);
+        return message.getPayloadLength();
+    }
+
+    private boolean isSendStuck() {
+        return this.sendStartedAt != 0
+                && System.nanoTime() - this.sendStartedAt > this.properties.getSendTimeLimit().toNanos();
+    }
+
+    private boolean isFull(int size) {
+        return this.queue.size() >= this.properties.getQueueLimit()
+                || this.queuedBytes + size > this.properties.getBufferSizeLimit();
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private void enqueue(Frame frame, int size) {
+        this.queue.add(frame);
+        this.queuedBytes += size;
+        this.available.signal();
+    }
+
+    /**
+     * Apply the overflow policy, must be called while holding the lock.
+     * Only snapshots are ever dropped, a later snapshot carries the same state. Anything else missing would leave
+     * a gap the client can't see while connected, so it is disconnected and resumes from the replay log instead.
+     *
+     * @return false if the frame still doesn't fit and the session must be disconnected
+     */
+    private boolean makeRoom(Frame frame, int size) {
+        if (this.properties.getOverflowPolicy() == OverflowPolicy.DISCONNECT) {
+            return false;
+        }
+        String key = frame.coalescingKey();
+        if (this.properties.getOverflowPolicy() == OverflowPolicy.COALESCE && key != null) {
+            Iterator<Frame> iterator = this.queue.descendingIterator();
+            while (iterator.hasNext()) {
+                Frame queued = iterator.next();
+                if (key.equals(queued.coalescingKey())) {
+                    iterator.remove();
+                    this.queuedBytes -= this.sizeOf(queued);
+                    this.metrics.onDropped(WebsocketMetrics.Drop.COALESCED);
+                    break;
+                }
+            }
+        }
+        Iterator<Frame> iterator = this.queue.iterator();
+        while (iterator.hasNext() && this.isFull(size)) {
+            Frame dropped = iterator.next();
+            if (dropped.coalescingKey() == null) {
+                continue;
+            }
+            iterator.remove();
+            this.queuedBytes -= this.sizeOf(dropped);
+            this.metrics.onDropped(WebsocketMetrics.Drop.OVERFLOW);
+            log.debug("Dropped {} for session {}", dropped.event().getType(), session.getId());
+        }
+        return !this.isFull(size);
+    }
+
+    /**
+     * Stop accepting frames and close the underlying session off the caller's thread,
+     * must be called while holding the lock
+     */
+    private void disconnect(CloseStatus status) {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        this.queue.clear();
+        this.queuedBytes = 0;
+        if (this.sendStartedAt != 0) {
+            // The writer's thread is inside a send that may never return, it can't close the session itself
+            Thread.ofVirtual()
+                    .name("ws-closer-" + session.getId())
+                    .start(() -> this.closeSession(status));
+        } else {
+            this.closing = status;
+            this.available.signal();
+        }
+    }
+
+    private void closeSession(CloseStatus status) {
+        try {
+            this.session.close(status);
+        } catch (IOException e) {
+            // No need for logs
+        }
+    }
+
+}
@@ -12,15 +12,18 @@ public class WebsocketConfig implements WebSocketConfigurer {
 
     private final BufferedWebSocketHandler handler;
     private final WebsocketInterceptor interceptor;
+    private final WebsocketProperties properties;
 
-    public WebsocketConfig(BufferedWebSocketHandler handler, WebsocketInterceptor interceptor) {
+    public WebsocketConfig(BufferedWebSocketHandler handler, WebsocketInterceptor interceptor, WebsocketProperties properties) {
         this.handler = handler;
         this.interceptor = interceptor;
+        this.properties = properties;
     }
 
     @Override
     public void registerWebSocketHandlers(@Nonnull WebSocketHandlerRegistry registry) {
         registry.addHandler(handler, "websocket")
+                .setHandshakeHandler(new CompressionHandshakeHandler(properties))
                 .addInterceptors(interceptor)
                 .setAllowedOrigins("*");
     }
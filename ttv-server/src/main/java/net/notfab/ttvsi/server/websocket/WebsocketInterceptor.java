@@ -2,6 +2,7 @@ package net.notfab.ttvsi.server.websocket;
 
 import jakarta.annotation.Nonnull;
 import net.notfab.ttvsi.common.Headers;
+import net.notfab.ttvsi.common.WireEncoding;
 import net.notfab.ttvsi.common.WsCredentials;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -52,6 +53,24 @@ public class WebsocketInterceptor implements HandshakeInterceptor {
         }
         attributes.put(Headers.X_ROOM_ID, roomId);
 
+        // Optional, last room sequence number seen by a reconnecting client and the epoch of the log it came from
+        String lastSequence = this.getHeader(Headers.X_LAST_SEQUENCE, request.getHeaders());
+        String lastEpoch = this.getHeader(Headers.X_LAST_EPOCH, request.getHeaders());
+        if (lastSequence != null) {
+            try {
+                attributes.put(Headers.X_LAST_SEQUENCE, Long.parseLong(lastSequence));
+                attributes.put(Headers.X_LAST_EPOCH, lastEpoch == null ? 0L : Long.parseLong(lastEpoch));
+            } catch (NumberFormatException e) {
+                response.setStatusCode(HttpStatus.BAD_REQUEST);
+                return false;
+            }
+        }
+
+        // Optional, wire encoding requested by the client. Echoed back so clients know it was accepted
+        WireEncoding encoding = WireEncoding.fromHeader(this.getHeader(Headers.X_ENCODING, request.getHeaders()));
+        attributes.put(Headers.X_ENCODING, encoding);
+        response.getHeaders().set(Headers.X_ENCODING, encoding.name());
+
         // Store them all in a credentials attribute
         attributes.put(Headers.X_CREDENTIALS, new WsCredentials(UUID.fromString(clientId), twitchId, roomId));
         return true;
@@ -0,0 +1,113 @@
+package net.notfab.ttvsi.server.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.notfab.ttvsi.common.NetEvent;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters on the websocket hot path, all created upfront so recording never touches the registry.
+ */
+@Component
+public class WebsocketMetrics {
+
+    /**
+     * Why an outbound message never reached its client
+     */
+    public enum Drop {
+        /**
+         * Oldest message discarded to make room in a full queue
+         */
+        OVERFLOW,
+        /**
+         * Superseded by a newer snapshot of the same state
+         */
+        COALESCED,
+        /**
+         * Direct message for a client that is not connected
+         */
+        OFFLINE,
+        /**
+         * Session was closed for being too slow
+         */
+        DISCONNECTED
+    }
+
+    private final Map<NetEvent, Counter> inbound = new EnumMap<>(NetEvent.class);
+    private final Map<NetEvent, Counter> outbound = new EnumMap<>(NetEvent.class);
+    private final Map<Drop, Counter> dropped = new EnumMap<>(Drop.class);
+    private final Timer serialization;
+    private final Timer send;
+    private final DistributionSummary bufferDepth;
+    private final Counter replayed;
+
+    public WebsocketMetrics(MeterRegistry registry) {
+        for (NetEvent event : NetEvent.values()) {
+            this.inbound.put(event, Counter.builder("ttv.messages.inbound")
+                    .description("Messages received from clients")
+                    .tag("type", event.name())
+                    .register(registry));
+            this.outbound.put(event, Counter.builder("ttv.messages.outbound")
+                    .description("Messages written to clients")
+                    .tag("type", event.name())
+                    .register(registry));
+        }
+        for (Drop reason : Drop.values()) {
+            this.dropped.put(reason, Counter.builder("ttv.messages.dropped")
+                    .description("Outbound messages that were never sent")
+                    .tag("reason", reason.name().toLowerCase())
+                    .register(registry));
+        }
+        this.serialization = Timer.builder("ttv.serialization")
+                .description("Time to encode an event for one wire encoding")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.send = Timer.builder("ttv.send.latency")
+                .description("Time to write a message to a session")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.bufferDepth = DistributionSummary.builder("ttv.buffer.depth")
+                .description("Outbound queue depth of a session when a message is queued")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.replayed = Counter.builder("ttv.messages.replayed")
+                .description("Messages replayed to reconnecting clients")
+                .register(registry);
+    }
+
+    public Timer getSerialization() {
+        return this.serialization;
+    }
+
+    public void onInbound(NetEvent event) {
+        this.inbound.get(event).increment();
+    }
+
+    public void onSent(NetEvent event, long nanos) {
+        this.outbound.get(event).increment();
+        this.send.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void onQueued(int depth) {
+        this.bufferDepth.record(depth);
+    }
+
+    public void onReplayed(int count) {
+        this.replayed.increment(count);
+    }
+
+    public void onDropped(Drop reason) {
+        this.dropped.get(reason).increment();
+    }
+
+    public void onDropped(Drop reason, int count) {
+        this.dropped.get(reason).increment(count);
+    }
+
+}
@@ -0,0 +1,47 @@
+package net.notfab.ttvsi.server.websocket;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "ttv.websocket")
+public class WebsocketProperties {
+
+    /**
+     * Maximum number of frames queued per session
+     */
+    private int queueLimit = 1024;
+
+    /**
+     * Maximum number of payload bytes queued per session
+     */
+    private int bufferSizeLimit = 512 * 1024;
+
+    /**
+     * Maximum time a single send may take before the session is considered stuck
+     */
+    private Duration sendTimeLimit = Duration.ofSeconds(10);
+
+    /**
+     * Policy applied once the queue or buffer size limit is reached
+     */
+    private OverflowPolicy overflowPolicy = OverflowPolicy.COALESCE;
+
+    /**
+     * Number of recent broadcasts each room keeps for reconnecting clients
+     */
+    private int replayLogSize = 256;
+
+    /**
+     * Negotiate permessage-deflate with clients that offer it
+     */
+    private boolean compression = true;
+
+    /**
+     * One in this many messages sent to compressed sessions is deflated again to estimate the compression ratio
+     */
+    private int compressionSampleRate = 64;
+
+}
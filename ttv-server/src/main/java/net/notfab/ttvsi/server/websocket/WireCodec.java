@@ -0,0 +1,83 @@
+package net.notfab.ttvsi.server.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.Nullable;
+import net.notfab.ttvsi.common.NetworkEvent;
+import net.notfab.ttvsi.common.WireEncoding;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts {@link NetworkEvent}s to and from websocket messages in every supported {@link WireEncoding}.
+ */
+public class WireCodec {
+
+    private final Map<WireEncoding, ObjectMapper> mappers = new EnumMap<>(WireEncoding.class);
+    private final @Nullable Timer encodeTimer;
+
+    public WireCodec() {
+        this(null);
+    }
+
+    /**
+     * @param encodeTimer records the time spent encoding, if set
+     */
+    public WireCodec(@Nullable Timer encodeTimer) {
+        this.encodeTimer = encodeTimer;
+        for (WireEncoding encoding : WireEncoding.values()) {
+            this.mappers.put(encoding, encoding.createMapper());
+        }
+    }
+
+    /**
+     * @param epoch    epoch of the room log that assigned the sequence, ignored for {@link Frame#UNSEQUENCED} events
+     * @param sequence room sequence number, or {@link Frame#UNSEQUENCED}
+     */
+    public WebSocketMessage<?> encode(NetworkEvent event, long epoch, long sequence, WireEncoding encoding)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            return this.write(event, epoch, sequence, encoding);
+        } finally {
+            if (this.encodeTimer != null) {
+                this.encodeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private WebSocketMessage<?> write(NetworkEvent event, long epoch, long sequence, WireEncoding encoding)
+            throws IOException {
+        ObjectMapper mapper = this.mappers.get(encoding);
+        Object value = event;
+        if (sequence != Frame.UNSEQUENCED) {
+            ObjectNode node = mapper.valueToTree(event);
+            node.put(NetworkEvent.EPOCH, epoch);
+            node.put(NetworkEvent.SEQUENCE, sequence);
+            value = node;
+        }
+        if (encoding.isBinary()) {
+            return new BinaryMessage(mapper.writeValueAsBytes(value));
+        }
+        return new TextMessage(mapper.writeValueAsString(value));
+    }
+
+    public NetworkEvent decode(String payload) throws IOException {
+        return this.mappers.get(WireEncoding.JSON).readValue(payload, NetworkEvent.class);
+    }
+
+    public NetworkEvent decode(WireEncoding encoding, ByteBuffer payload) throws IOException {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return this.mappers.get(encoding).readValue(bytes, NetworkEvent.class);
+    }
+
+}